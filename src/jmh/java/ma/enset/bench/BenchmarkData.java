@@ -0,0 +1,64 @@
+package ma.enset.bench;
+
+import ma.enset.data.DataGenerator;
+import ma.enset.data.RentalSchema;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Benchmark datasets under {@code target/bench-data}, generated once per
+ * scale with a fixed seed so every commit is measured on identical data.
+ */
+final class BenchmarkData {
+    static final long SEED = 42L;
+    private static final long ROWS_PER_SHARD = 1_000_000L;
+    private static final Path ROOT = Path.of("target", "bench-data");
+
+    private BenchmarkData() {
+    }
+
+    static Path csv(long rows) throws IOException {
+        Path dir = ROOT.resolve("rentals-" + rows + "-csv");
+        if (!Files.isDirectory(dir)) {
+            // Always sharded so the dataset is a directory, moved in place only once complete
+            int shards = (int) Math.max(2, rows / ROWS_PER_SHARD);
+            Path tmp = ROOT.resolve("rentals-" + rows + "-csv.tmp");
+            DataGenerator.generate(tmp, rows, shards, SEED, 5);
+            Files.move(tmp, dir);
+        }
+        return dir;
+    }
+
+    static Path parquet(SparkSession spark, long rows) throws IOException {
+        Path dir = ROOT.resolve("rentals-" + rows + "-parquet");
+        if (!Files.isDirectory(dir)) {
+            // Same as csv(): an interrupted write leaves only the temp dir, overwritten by the next run
+            Path tmp = ROOT.resolve("rentals-" + rows + "-parquet.tmp");
+            readCsv(spark, csv(rows)).write().mode(SaveMode.Overwrite).parquet(tmp.toString());
+            Files.move(tmp, dir);
+        }
+        return dir;
+    }
+
+    static Dataset<Row> load(SparkSession spark, long rows, String format) throws IOException {
+        return switch (format) {
+            case "csv" -> readCsv(spark, csv(rows));
+            case "parquet" -> spark.read().parquet(parquet(spark, rows).toString());
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+    }
+
+    private static Dataset<Row> readCsv(SparkSession spark, Path path) {
+        return spark.read()
+                .schema(RentalSchema.SCHEMA)
+                .option("header", "true")
+                .option("timestampFormat", RentalSchema.TIMESTAMP_PATTERN)
+                .csv(path.toString());
+    }
+}
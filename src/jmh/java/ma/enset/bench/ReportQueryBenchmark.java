@@ -0,0 +1,160 @@
+package ma.enset.bench;
+
+import ma.enset.data.RentalSession;
+import ma.enset.report.RentalCube;
+import ma.enset.report.ReportEngine;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per exercise query, each run against the raw rentals (no
+ * cache) so the numbers include the scan. Results are fully computed and
+ * discarded through Spark's {@code noop} sink.
+ * <p>
+ * Restrict the matrix from the command line, e.g.
+ * {@code -Dbench.args="-p rows=1000000 -p format=parquet peakHours"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportQueryBenchmark {
+
+    @Param({"1000", "1000000", "50000000"})
+    public long rows;
+
+    @Param({"4", "16", "64"})
+    public int shufflePartitions;
+
+    @Param({"csv", "parquet"})
+    public String format;
+
+    private SparkSession spark;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        spark = RentalSession.builder("Bike Sharing Benchmark")
+                .config("spark.sql.shuffle.partitions", String.valueOf(shufflePartitions))
+                .config("spark.ui.enabled", "false")
+                .getOrCreate();
+        spark.sparkContext().setLogLevel("WARN");
+        BenchmarkData.load(spark, rows, format).createOrReplaceTempView("bike_rentals_view");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        spark.stop();
+    }
+
+    private void run(String name) {
+        ReportQuery query = ReportQueries.byName(name).orElseThrow();
+        spark.sql(query.sql()).write().format("noop").mode(SaveMode.Overwrite).save();
+    }
+
+    @Benchmark
+    public void longRentals() {
+        run("exercise3.longRentals");
+    }
+
+    @Benchmark
+    public void stationARentals() {
+        run("exercise3.stationARentals");
+    }
+
+    @Benchmark
+    public void totalRevenue() {
+        run("exercise3.totalRevenue");
+    }
+
+    @Benchmark
+    public void rentalsByStation() {
+        run("exercise4.rentalsByStation");
+    }
+
+    @Benchmark
+    public void avgDurationByStation() {
+        run("exercise4.avgDurationByStation");
+    }
+
+    @Benchmark
+    public void topStation() {
+        run("exercise4.topStation");
+    }
+
+    @Benchmark
+    public void extractedHours() {
+        run("exercise5.extractedHours");
+    }
+
+    @Benchmark
+    public void rentalsByHour() {
+        run("exercise5.rentalsByHour");
+    }
+
+    @Benchmark
+    public void peakHours() {
+        run("exercise5.peakHours");
+    }
+
+    @Benchmark
+    public void morningStation() {
+        run("exercise5.morningStation");
+    }
+
+    @Benchmark
+    public void averageAge() {
+        run("exercise6.averageAge");
+    }
+
+    @Benchmark
+    public void rentalsByGender() {
+        run("exercise6.rentalsByGender");
+    }
+
+    @Benchmark
+    public void rentalsByAgeGroup() {
+        run("exercise6.rentalsByAgeGroup");
+    }
+
+    @Benchmark
+    public void profitableRoutes() {
+        run("bonus.profitableRoutes");
+    }
+
+    @Benchmark
+    public void priceByDuration() {
+        run("bonus.priceByDuration");
+    }
+
+    /** Every aggregate query answered from one fused cube, as the report runs them. */
+    @Benchmark
+    public void fusedAggregates() {
+        ReportEngine engine = new ReportEngine(spark);
+        for (ReportQuery query : ReportQueries.all()) {
+            if (query.isAggregate()) {
+                engine.result(query).write().format("noop").mode(SaveMode.Overwrite).save();
+            }
+        }
+        spark.catalog().uncacheTable(RentalCube.VIEW_NAME);
+    }
+}
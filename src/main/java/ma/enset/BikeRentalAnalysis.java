@@ -1,22 +1,142 @@
 package ma.enset;
 
+import ma.enset.approx.SketchStore;
+import ma.enset.columnar.ColumnarAnalysis;
+import ma.enset.data.RentalLoader;
+import ma.enset.data.RentalSchema;
+import ma.enset.data.RentalSession;
+import ma.enset.layout.BucketedLayout;
+import ma.enset.layout.PartitionedLayout;
+import ma.enset.layout.TimeWindow;
+import ma.enset.metrics.MetricsExporter;
+import ma.enset.metrics.QueryMetrics;
+import ma.enset.metrics.QueryMetricsListener;
+import ma.enset.report.ReportEngine;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+import ma.enset.report.ScanCounter;
+import ma.enset.rollup.RollupStore;
 import org.apache.spark.sql.Dataset;
 import org.apache.spark.sql.Row;
 import org.apache.spark.sql.SparkSession;
 import org.apache.spark.sql.functions;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.apache.spark.sql.functions.*;
 
 public class BikeRentalAnalysis {
+        private static final Pattern HOUR_RANGE = Pattern.compile("(\\d{1,2})(?:-(\\d{1,2}))?");
+
         public static void main(String[] args) {
+                boolean useRollup = false;
+                String inputPath = "bike_sharing.csv";
+                boolean inputGiven = false;
+                boolean ingest = false;
+                boolean approximate = false;
+                String layout = "cached";
+                LocalDate from = null;
+                LocalDate to = null;
+                int lastDays = 0;
+                int fromHour = 0;
+                int toHour = 23;
+                long fastPathThreshold = ColumnarAnalysis.DEFAULT_THRESHOLD_BYTES;
+                int concurrency = 1;
+                boolean baseline = false;
+                for (int i = 0; i < args.length; i++) {
+                        switch (args[i]) {
+                                case "--rollup" -> useRollup = true;
+                                case "--input" -> {
+                                        inputPath = args[++i];
+                                        inputGiven = true;
+                                }
+                                case "--ingest" -> ingest = true;
+                                case "--approx" -> approximate = true;
+                                case "--layout" -> layout = args[++i];
+                                case "--from" -> from = LocalDate.parse(args[++i]);
+                                case "--to" -> to = LocalDate.parse(args[++i]);
+                                case "--last-days" -> lastDays = Integer.parseInt(args[++i]);
+                                case "--hours" -> {
+                                        int[] range = hourRange(args[++i]);
+                                        fromHour = range[0];
+                                        toHour = range[1];
+                                }
+                                case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                                case "--baseline" -> baseline = true;
+                                case "--fast-path-threshold" -> fastPathThreshold = Long.parseLong(args[++i]);
+                                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                }
+
+                // Le rollup couvre toutes les données : incompatible avec une fenêtre de temps ou une table bucketée
+                if (useRollup && !layout.equals("cached")) {
+                        throw new IllegalArgumentException("--rollup cannot be combined with --layout " + layout
+                                        + ": the rollup aggregates the whole input");
+                }
+                if (concurrency < 1) {
+                        throw new IllegalArgumentException("--concurrency must be at least 1");
+                }
+                if (baseline && concurrency == 1) {
+                        throw new IllegalArgumentException("--baseline requires --concurrency greater than 1");
+                }
+                boolean windowed = from != null || to != null || lastDays > 0 || fromHour > 0 || toHour < 23;
+                if (windowed && !layout.equals("partitioned")) {
+                        throw new IllegalArgumentException("--from, --to, --last-days and --hours require --layout partitioned");
+                }
+                // Table partitionnée : l'ingestion écrit les dates du CSV, la requête lit la table sans le CSV
+                if (ingest && !layout.equals("partitioned")) {
+                        throw new IllegalArgumentException("--ingest requires --layout partitioned");
+                }
+                if (ingest && (windowed || approximate || concurrency > 1)) {
+                        throw new IllegalArgumentException("--ingest only writes the partitioned table: "
+                                        + "time windows, --approx and --concurrency apply to query runs");
+                }
+                if (layout.equals("partitioned") && !ingest && inputGiven) {
+                        throw new IllegalArgumentException("--input is read by --ingest; a partitioned query run reads "
+                                        + "warehouse/" + PartitionedLayout.TABLE + " only");
+                }
+
+                // Petit fichier et options par défaut : moteur colonnaire en mémoire, sans démarrer Spark.
+                // Si le fichier contient des lignes invalides, on repasse par Spark (quarantaine).
+                // --concurrency mesure le pool FAIR de Spark : pas de moteur colonnaire dans ce cas
+                Path input = Path.of(inputPath);
+                if (layout.equals("cached") && !useRollup && !approximate && concurrency == 1
+                                && ColumnarAnalysis.eligible(input, fastPathThreshold)) {
+                        List<QueryMetrics> columnar = ColumnarAnalysis.run(input);
+                        if (columnar != null) {
+                                System.out.println("\nFile scans executed: 1 (columnar engine, one memory-mapped read)");
+                                try {
+                                        // Sans Spark, seuls les temps d'exécution sont connus (pas de jobs, tâches ni shuffle)
+                                        writeMetrics(columnar, "Bike Sharing Analysis (columnar)");
+                                        System.out.println("Columnar fast path: only wall times are recorded, "
+                                                        + "Spark job/stage metrics need --fast-path-threshold 0");
+                                } catch (IOException e) {
+                                        System.err.println("Query metrics not written: " + e.getMessage());
+                                }
+                                System.out.println("\n========================================");
+                                System.out.println("ANALYSIS COMPLETE!");
+                                System.out.println("========================================\n");
+                                return;
+                        }
+                }
+
                 // Initialize Spark Session
-                SparkSession spark = SparkSession.builder()
-                                .appName("Bike Sharing Analysis")
-                                .master("local[*]")
-                                .config("spark.sql.shuffle.partitions", "4")
+                // FAIR : les requêtes soumises en parallèle se partagent les cœurs (pool "report")
+                // Horodatages lus en UTC (RentalSession) : mêmes heures que le moteur colonnaire
+                SparkSession spark = RentalSession.builder("Bike Sharing Analysis")
+                                .config("spark.sql.warehouse.dir", new java.io.File("warehouse").getAbsolutePath())
+                                .config("spark.scheduler.mode", concurrency > 1 ? "FAIR" : "FIFO")
                                 .getOrCreate();
 
                 spark.sparkContext().setLogLevel("WARN");
+                ScanCounter scans = ScanCounter.register(spark);
+                QueryMetricsListener metrics = QueryMetricsListener.register(spark);
 
                 System.out.println("\n========================================");
                 System.out.println("BIKE SHARING ANALYSIS - SPARK SQL");
@@ -28,49 +148,114 @@ public class BikeRentalAnalysis {
                         // ===================================
                         System.out.println("\n--- EXERCISE 1: Data Loading & Exploration ---\n");
 
-                        // 1. Load CSV file - VÉRIFIER QUE LE FICHIER EXISTE
-                        System.out.println("1. Loading data from bike_sharing.csv...");
-
-                        // Obtenir le chemin absolu du fichier
-                        String csvPath = new java.io.File("bike_sharing.csv").getAbsolutePath();
-                        System.out.println("Chemin du fichier: " + csvPath);
-
-                        // Vérifier que le fichier existe
-                        java.io.File csvFile = new java.io.File(csvPath);
-                        if (!csvFile.exists()) {
-                                System.err.println("ERREUR: Le fichier n'existe pas à: " + csvPath);
-                                System.err.println("Répertoire de travail actuel: " + System.getProperty("user.dir"));
-                                System.err.println(
-                                                "\nVeuillez d'abord exécuter DataGenerator.java pour générer le fichier.");
-                                throw new RuntimeException("Fichier bike_sharing.csv introuvable");
+                        Supplier<Dataset<Row>> rentals;
+                        String csvPath = new java.io.File(inputPath).getAbsolutePath();
+                        PartitionedLayout partitioned = layout.equals("partitioned")
+                                        ? new PartitionedLayout(spark, Path.of("warehouse")) : null;
+                        if (partitioned != null && !ingest) {
+                                // 1. Requête sur la table déjà ingérée : seules les partitions de la fenêtre sont lues
+                                System.out.println("1. Loading data from " + partitioned.location() + "...");
+                                if (!partitioned.exists()) {
+                                        throw new IllegalStateException("No data in " + partitioned.location()
+                                                        + ": run with --layout partitioned --ingest first");
+                                }
+                                LocalDate windowFrom = lastDays > 0
+                                                ? partitioned.latestDate().minusDays(lastDays - 1) : from;
+                                LocalDate windowTo = lastDays > 0 ? partitioned.latestDate() : to;
+                                TimeWindow window = new TimeWindow(windowFrom, windowTo, fromHour, toHour);
+                                System.out.println("Time window: " + window);
+                                System.out.println(partitioned.pruning(window));
+                                Dataset<Row> inWindow = partitioned.read(window);
+                                rentals = () -> inWindow;
+                        } else {
+                                // 1. Load CSV file - VÉRIFIER QUE LE FICHIER EXISTE
+                                System.out.println("1. Loading data from " + inputPath + "...");
+
+                                // Obtenir le chemin absolu du fichier (ou du répertoire de fichiers CSV)
+                                System.out.println("Chemin du fichier: " + csvPath);
+
+                                // Vérifier que le fichier existe
+                                java.io.File csvFile = new java.io.File(csvPath);
+                                if (!csvFile.exists()) {
+                                        System.err.println("ERREUR: Le fichier n'existe pas à: " + csvPath);
+                                        System.err.println("Répertoire de travail actuel: " + System.getProperty("user.dir"));
+                                        System.err.println(
+                                                        "\nVeuillez d'abord exécuter DataGenerator.java pour générer le fichier.");
+                                        throw new RuntimeException("Fichier " + inputPath + " introuvable");
+                                }
+
+                                // Schéma déclaré : une seule lecture du fichier, sans inferSchema.
+                                // Chargement au premier besoin puis réutilisé : en mode rollup, il n'a lieu que
+                                // pour les requêtes ligne à ligne ou pour reconstruire le cube
+                                String quarantinePath = new java.io.File("quarantine").getAbsolutePath();
+                                rentals = memoize(() -> {
+                                        RentalLoader.LoadResult loaded = metrics.record("exercise1.load",
+                                                        () -> RentalLoader.load(spark, csvPath, quarantinePath));
+                                        if (loaded.malformedCount() > 0) {
+                                                System.out.println("⚠ " + loaded.malformedCount()
+                                                                + " malformed or incomplete rows quarantined to: " + loaded.quarantinePath());
+                                        }
+
+                                        // Vérifier que les données sont chargées
+                                        if (loaded.rentals().isEmpty()) {
+                                                System.err.println("ERREUR: Le fichier " + inputPath + " est vide!");
+                                                System.err.println(
+                                                                "Veuillez d'abord exécuter DataGenerator.java pour générer le fichier.");
+                                                throw new RuntimeException("Fichier " + inputPath + " est vide");
+                                        }
+                                        return loaded.rentals();
+                                });
                         }
 
-                        Dataset<Row> df = spark.read()
-                                        .option("header", "true")
-                                        .option("inferSchema", "true")
-                                        .csv(csvPath);
-
-                        // Vérifier que les données sont chargées
-                        if (df.isEmpty()) {
-                                System.err.println("ERREUR: Le fichier bike_sharing.csv est vide!");
-                                System.err.println(
-                                                "Veuillez d'abord exécuter DataGenerator.java pour générer le fichier.");
-                                throw new RuntimeException("Fichier bike_sharing.csv est vide");
+                        // Les agrégations partagent un seul scan (grouping sets) au lieu
+                        // d'une lecture complète par requête
+                        ReportEngine engine = new ReportEngine(spark, metrics);
+                        if (useRollup) {
+                                // Cube persisté sur disque, mis à jour seulement si les données changent.
+                                // Avec --input sur un répertoire, les nouveaux fichiers sont fusionnés sans tout recalculer.
+                                // La vue brute n'est enregistrée qu'à la première requête qui en a besoin
+                                engine.withRollup(new RollupStore(spark, Path.of("rollup"), Path.of(csvPath), rentals))
+                                                .withLazyRentals(() -> rentals.get().createOrReplaceTempView("bike_rentals_view"));
+
+                                System.out.println("✓ Data source checked, rows are parsed on demand");
+
+                                // 2. Display schema : le schéma déclaré, sans lire le fichier
+                                System.out.println("\n2. Schema:");
+                                RentalSchema.SCHEMA.printTreeString();
+
+                                // 3. Show first 5 rows : seul le début du fichier est lu
+                                System.out.println("\n3. First 5 rows:");
+                                RentalLoader.readValid(spark, csvPath).show(5, false);
+
+                                // 4. Count total rentals : somme du cube, sans parcourir les lignes
+                                long totalRentals = engine.totalRentals();
+                                System.out.println("\n4. Total number of rentals: " + totalRentals + "\n");
+                        } else {
+                                Dataset<Row> df = rentals.get();
+                                System.out.println("✓ Data loaded successfully");
+
+                                // 2. Display schema
+                                System.out.println("\n2. Schema:");
+                                df.printSchema();
+
+                                // 3. Show first 5 rows
+                                System.out.println("\n3. First 5 rows:");
+                                df.show(5, false);
+
+                                // 4. Count total rentals
+                                long totalRentals = df.count();
+                                System.out.println("\n4. Total number of rentals: " + totalRentals + "\n");
                         }
 
-                        System.out.println("✓ Data loaded successfully");
-
-                        // 2. Display schema
-                        System.out.println("\n2. Schema:");
-                        df.printSchema();
-
-                        // 3. Show first 5 rows
-                        System.out.println("\n3. First 5 rows:");
-                        df.show(5, false);
-
-                        // 4. Count total rentals
-                        long totalRentals = df.count();
-                        System.out.println("\n4. Total number of rentals: " + totalRentals + "\n");
+                        if (ingest) {
+                                // Ingestion seule : les dates du fichier remplacent leurs partitions, sans rapport
+                                System.out.println("\n--- Ingestion into " + PartitionedLayout.TABLE + " ---\n");
+                                metrics.record("layout.savePartitioned", () -> partitioned.save(rentals.get()));
+                                System.out.println("✓ Date partitions written to: " + partitioned.location());
+                                System.out.println("Query them with --layout partitioned, the CSV is not read again");
+                                finish(spark, scans, metrics);
+                                return;
+                        }
 
                         // ===================================
                         // EXERCISE 2: CREATE TEMPORARY VIEW
@@ -78,207 +263,84 @@ public class BikeRentalAnalysis {
                         System.out.println("\n--- EXERCISE 2: Create Temporary View ---\n");
 
                         // CRÉATION DE LA VUE TEMPORAIRE - CETTE ÉTAPE EST CRUCIALE
-                        df.createOrReplaceTempView("bike_rentals_view");
-                        System.out.println("✓ Temporary view 'bike_rentals_view' created");
-
-                        // Vérifier que la vue est accessible
-                        spark.sql("SELECT COUNT(*) as count FROM bike_rentals_view").show();
-
-                        // ===================================
-                        // EXERCISE 3: BASIC SQL QUERIES
-                        // ===================================
-                        System.out.println("\n--- EXERCISE 3: Basic SQL Queries ---\n");
-
-                        // 1. Rentals longer than 30 minutes
-                        System.out.println("1. Rentals longer than 30 minutes:");
-                        Dataset<Row> longRentals = spark.sql(
-                                        "SELECT rental_id, user_id, start_station, end_station, duration_minutes " +
-                                                        "FROM bike_rentals_view " +
-                                                        "WHERE duration_minutes > 30 " +
-                                                        "ORDER BY duration_minutes DESC");
-                        longRentals.show(10, false);
-                        System.out.println("Total: " + longRentals.count() + " rentals\n");
-
-                        // 2. Rentals starting at Station A
-                        System.out.println("\n2. Rentals starting at 'Station A':");
-                        Dataset<Row> stationARentals = spark.sql(
-                                        "SELECT rental_id, user_id, start_time, end_station, duration_minutes " +
-                                                        "FROM bike_rentals_view " +
-                                                        "WHERE start_station = 'Station A'");
-                        stationARentals.show(10, false);
-                        System.out.println("Total: " + stationARentals.count() + " rentals\n");
-
-                        // 3. Total revenue
-                        System.out.println("\n3. Total Revenue:");
-                        Dataset<Row> revenue = spark.sql(
-                                        "SELECT ROUND(SUM(price), 2) as total_revenue " +
-                                                        "FROM bike_rentals_view");
-                        revenue.show(false);
-
-                        // ===================================
-                        // EXERCISE 4: AGGREGATION QUERIES
-                        // ===================================
-                        System.out.println("\n--- EXERCISE 4: Aggregation Queries ---\n");
-
-                        // 1. Count rentals per start station
-                        System.out.println("1. Rentals count by start station:");
-                        Dataset<Row> rentalsByStation = spark.sql(
-                                        "SELECT start_station, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY start_station " +
-                                                        "ORDER BY rental_count DESC");
-                        rentalsByStation.show(false);
-
-                        // 2. Average duration per start station
-                        System.out.println("\n2. Average rental duration by start station:");
-                        Dataset<Row> avgDuration = spark.sql(
-                                        "SELECT start_station, " +
-                                                        "       ROUND(AVG(duration_minutes), 2) as avg_duration_minutes "
-                                                        +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY start_station " +
-                                                        "ORDER BY avg_duration_minutes DESC");
-                        avgDuration.show(false);
-
-                        // 3. Station with highest number of rentals
-                        System.out.println("\n3. Station with highest number of rentals:");
-                        Dataset<Row> topStation = spark.sql(
-                                        "SELECT start_station, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY start_station " +
-                                                        "ORDER BY rental_count DESC " +
-                                                        "LIMIT 1");
-                        topStation.show(false);
+                        BucketedLayout bucketed = null;
+                        switch (layout) {
+                                case "cached" -> {
+                                        if (!useRollup) {
+                                                rentals.get().createOrReplaceTempView("bike_rentals_view");
+                                        }
+                                }
+                                case "bucketed" -> {
+                                        // Table bucketée sur start_station : pas de shuffle pour les agrégats par station
+                                        BucketedLayout table = new BucketedLayout(spark, Path.of("warehouse"));
+                                        metrics.record("layout.saveBucketed", () -> table.save(rentals.get()));
+                                        table.table().createOrReplaceTempView("bike_rentals_view");
+                                        bucketed = table;
+                                }
+                                // Parquet partitionné par date, trié par heure : ne lit que les partitions utiles
+                                case "partitioned" -> rentals.get().createOrReplaceTempView("bike_rentals_view");
+                                default -> throw new IllegalArgumentException("Unknown layout: " + layout);
+                        }
+                        if (useRollup) {
+                                // Le COUNT(*) forcerait le parsing complet du CSV
+                                System.out.println("✓ Temporary view 'bike_rentals_view' registered on first row-level query");
+                        } else {
+                                System.out.println("✓ Temporary view 'bike_rentals_view' created");
+
+                                // Vérifier que la vue est accessible
+                                spark.sql("SELECT COUNT(*) as count FROM bike_rentals_view").show();
+                        }
 
                         // ===================================
-                        // EXERCISE 5: TIME-BASED ANALYSIS
+                        // EXERCISES 3-6 & BONUS: REPORT QUERIES
                         // ===================================
-                        System.out.println("\n--- EXERCISE 5: Time-Based Analysis ---\n");
-
-                        // 1. Extract hour from start_time
-                        System.out.println("1. Sample of extracted hours:");
-                        Dataset<Row> withHour = spark.sql(
-                                        "SELECT rental_id, start_time, HOUR(start_time) as hour " +
-                                                        "FROM bike_rentals_view " +
-                                                        "LIMIT 10");
-                        withHour.show(false);
-
-                        // 2. Rentals per hour (peak hours)
-                        System.out.println("\n2. Bikes rented per hour (Peak Hours Analysis):");
-                        Dataset<Row> rentalsByHour = spark.sql(
-                                        "SELECT HOUR(start_time) as hour, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY HOUR(start_time) " +
-                                                        "ORDER BY hour");
-                        rentalsByHour.show(24, false);
-
-                        System.out.println("\nTop 3 Peak Hours:");
-                        Dataset<Row> peakHours = spark.sql(
-                                        "SELECT HOUR(start_time) as hour, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY HOUR(start_time) " +
-                                                        "ORDER BY rental_count DESC " +
-                                                        "LIMIT 3");
-                        peakHours.show(false);
-
-                        // 3. Most popular start station during morning (7-12)
-                        System.out.println("\n3. Most popular start station during morning (7-12):");
-                        Dataset<Row> morningStation = spark.sql(
-                                        "SELECT start_station, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "WHERE HOUR(start_time) BETWEEN 7 AND 12 " +
-                                                        "GROUP BY start_station " +
-                                                        "ORDER BY rental_count DESC " +
-                                                        "LIMIT 1");
-                        morningStation.show(false);
+                        if (bucketed != null) {
+                                // Les requêtes brutes lisent directement la table bucketée
+                                engine.withoutCube();
+                                int shuffling = bucketed.printExchangeCheck();
+                                if (shuffling > 0) {
+                                        // Le rapport reste juste, mais le bucketing ne supprime pas le shuffle attendu
+                                        System.err.println("⚠ " + shuffling + " station/route aggregate(s) still shuffle on "
+                                                        + BucketedLayout.TABLE + ": check the bucketing settings");
+                                }
+                        }
+                        // En mode approximatif, les classements par station et par trajet sont lus
+                        // dans les sketches au lieu d'un GROUP BY et d'un tri global exacts
+                        List<ReportQuery> queries = approximate
+                                        ? ReportQueries.all().stream()
+                                                        .filter(query -> !SketchStore.ANSWERED_QUERIES.contains(query.name()))
+                                                        .toList()
+                                        : ReportQueries.all();
+                        if (concurrency > 1) {
+                                // Requêtes indépendantes soumises ensemble, résultats affichés dans l'ordre des exercices
+                                long sequentialMs = -1;
+                                if (baseline) {
+                                        // Passe d'échauffement non mesurée : JIT et chemins de code chauds pour les deux mesures
+                                        engine.timeSequential(queries);
+                                        sequentialMs = engine.timeSequential(queries);
+                                }
+                                long concurrentMs = engine.runConcurrent(queries, concurrency);
+                                System.out.println("\nReport wall time: " + concurrentMs + " ms on " + concurrency + " threads"
+                                                + (sequentialMs < 0 ? "" : String.format(" (sequential baseline: %d ms, %.1fx)",
+                                                                sequentialMs, (double) sequentialMs / Math.max(1, concurrentMs))));
+                        } else {
+                                long sequentialMs = engine.run(queries);
+                                System.out.println("\nReport wall time: " + sequentialMs + " ms (sequential)");
+                        }
 
                         // ===================================
-                        // EXERCISE 6: USER BEHAVIOR ANALYSIS
+                        // OPTIONAL: APPROXIMATE ANALYTICS
                         // ===================================
-                        System.out.println("\n--- EXERCISE 6: User Behavior Analysis ---\n");
-
-                        // 1. Average age of users
-                        System.out.println("1. Average age of users:");
-                        Dataset<Row> avgAge = spark.sql(
-                                        "SELECT ROUND(AVG(age), 2) as average_age " +
-                                                        "FROM bike_rentals_view");
-                        avgAge.show(false);
-
-                        // 2. Count users by gender
-                        System.out.println("\n2. Rentals count by gender:");
-                        Dataset<Row> byGender = spark.sql(
-                                        "SELECT gender, COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY gender " +
-                                                        "ORDER BY rental_count DESC");
-                        byGender.show(false);
-
-                        // 3. Rentals by age group
-                        System.out.println("\n3. Rentals by age group:");
-                        Dataset<Row> byAgeGroup = spark.sql(
-                                        "SELECT " +
-                                                        "  CASE " +
-                                                        "    WHEN age BETWEEN 18 AND 30 THEN '18-30' " +
-                                                        "    WHEN age BETWEEN 31 AND 40 THEN '31-40' " +
-                                                        "    WHEN age BETWEEN 41 AND 50 THEN '41-50' " +
-                                                        "    WHEN age >= 51 THEN '51+' " +
-                                                        "    ELSE 'Unknown' " +
-                                                        "  END as age_group, " +
-                                                        "  COUNT(*) as rental_count " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY " +
-                                                        "  CASE " +
-                                                        "    WHEN age BETWEEN 18 AND 30 THEN '18-30' " +
-                                                        "    WHEN age BETWEEN 31 AND 40 THEN '31-40' " +
-                                                        "    WHEN age BETWEEN 41 AND 50 THEN '41-50' " +
-                                                        "    WHEN age >= 51 THEN '51+' " +
-                                                        "    ELSE 'Unknown' " +
-                                                        "  END " +
-                                                        "ORDER BY rental_count DESC");
-                        byAgeGroup.show(false);
+                        if (approximate) {
+                                System.out.println("\n--- APPROXIMATE ANALYTICS (sketches, replacing "
+                                                + String.join(", ", SketchStore.ANSWERED_QUERIES.stream().sorted().toList()) + ") ---\n");
+                                SketchStore sketches = new SketchStore(spark, Path.of("sketches"));
+                                // Seuls les jours des données chargées sont fusionnés, pas tout l'historique stocké
+                                List<String> days = metrics.record("approx.updateSketches", () -> sketches.update(rentals.get()));
+                                metrics.record("approx.report", () -> sketches.printReport(days));
+                        }
 
-                        // ===================================
-                        // BONUS: ADDITIONAL INSIGHTS
-                        // ===================================
-                        System.out.println("\n--- BONUS: Additional Insights ---\n");
-
-                        // Most profitable route
-                        System.out.println("Most profitable route:");
-                        Dataset<Row> profitableRoute = spark.sql(
-                                        "SELECT start_station, end_station, " +
-                                                        "       COUNT(*) as trips, " +
-                                                        "       ROUND(SUM(price), 2) as total_revenue " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY start_station, end_station " +
-                                                        "ORDER BY total_revenue DESC " +
-                                                        "LIMIT 5");
-                        profitableRoute.show(false);
-
-                        System.out.println("\nAverage price by duration category:");
-                        Dataset<Row> priceByDuration = spark.sql(
-                                        "SELECT " +
-                                                        "  CASE " +
-                                                        "    WHEN duration_minutes <= 15 THEN 'Short (0-15 min)' " +
-                                                        "    WHEN duration_minutes <= 30 THEN 'Medium (16-30 min)' " +
-                                                        "    WHEN duration_minutes <= 60 THEN 'Long (31-60 min)' " +
-                                                        "    ELSE 'Very Long (60+ min)' " +
-                                                        "  END as duration_category, " +
-                                                        "  COUNT(*) as rental_count, " +
-                                                        "  ROUND(AVG(price), 2) as avg_price " +
-                                                        "FROM bike_rentals_view " +
-                                                        "GROUP BY " +
-                                                        "  CASE " +
-                                                        "    WHEN duration_minutes <= 15 THEN 'Short (0-15 min)' " +
-                                                        "    WHEN duration_minutes <= 30 THEN 'Medium (16-30 min)' " +
-                                                        "    WHEN duration_minutes <= 60 THEN 'Long (31-60 min)' " +
-                                                        "    ELSE 'Very Long (60+ min)' " +
-                                                        "  END " +
-                                                        "ORDER BY avg_price");
-                        priceByDuration.show(false);
-
-                        System.out.println("\n========================================");
-                        System.out.println("ANALYSIS COMPLETE!");
-                        System.out.println("========================================\n");
+                        finish(spark, scans, metrics);
 
                 } catch (Exception e) {
                         System.err.println("\nERREUR lors de l'exécution:");
@@ -289,4 +351,51 @@ public class BikeRentalAnalysis {
                         spark.stop();
                 }
         }
+
+        // "7-12" ou "9" : heures incluses, 0 <= début <= fin <= 23
+        private static int[] hourRange(String value) {
+                Matcher range = HOUR_RANGE.matcher(value);
+                if (!range.matches()) {
+                        throw new IllegalArgumentException("--hours expects H or H-H, got: " + value);
+                }
+                int fromHour = Integer.parseInt(range.group(1));
+                int toHour = range.group(2) == null ? fromHour : Integer.parseInt(range.group(2));
+                if (fromHour > toHour || toHour > 23) {
+                        throw new IllegalArgumentException("--hours needs 0 <= from <= to <= 23, got: " + value);
+                }
+                return new int[]{fromHour, toHour};
+        }
+
+        // Calculé au premier appel puis réutilisé, y compris depuis les threads du rapport concurrent
+        private static <T> Supplier<T> memoize(Supplier<T> block) {
+                return new Supplier<>() {
+                        private T value;
+
+                        @Override
+                        public synchronized T get() {
+                                if (value == null) {
+                                        value = block.get();
+                                }
+                                return value;
+                        }
+                };
+        }
+
+        private static void finish(SparkSession spark, ScanCounter scans, QueryMetricsListener metrics)
+                        throws IOException {
+                System.out.println("\nFile scans executed: " + scans.fileScans());
+
+                // Métriques d'exécution par requête (JSON + format texte Prometheus)
+                writeMetrics(metrics.queries(), spark.sparkContext().appName());
+
+                System.out.println("\n========================================");
+                System.out.println("ANALYSIS COMPLETE!");
+                System.out.println("========================================\n");
+        }
+
+        private static void writeMetrics(List<QueryMetrics> queryMetrics, String application) throws IOException {
+                MetricsExporter.writeJson(queryMetrics, application, Path.of("metrics", "query-metrics.json"));
+                MetricsExporter.writePrometheus(queryMetrics, Path.of("metrics", "query-metrics.prom"));
+                System.out.println("Query metrics written to: " + Path.of("metrics").toAbsolutePath());
+        }
 }
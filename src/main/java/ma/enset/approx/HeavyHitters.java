@@ -0,0 +1,126 @@
+package ma.enset.approx;
+
+import org.apache.spark.util.sketch.CountMinSketch;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted top-K tracker: a Count-Min sketch for the weights plus a bounded
+ * set of candidate keys whose sketch estimate is among the largest seen.
+ * <p>
+ * Estimates never undercount. With probability {@link #CONFIDENCE} they
+ * overcount by at most {@link #errorBound()}, i.e. {@link #EPSILON} times the
+ * total weight added. Two trackers built with the same parameters merge
+ * exactly, which is what makes per-day sketches combinable.
+ */
+public final class HeavyHitters implements Serializable {
+    public static final double EPSILON = 0.002;
+    public static final double CONFIDENCE = 0.99;
+    private static final int SEED = 42;
+
+    private final CountMinSketch counts;
+    private final int capacity;
+    private final Map<String, Long> candidates = new HashMap<>();
+    // Lower bound of the smallest candidate estimate, only meaningful once full
+    private long floor;
+
+    public HeavyHitters(int capacity) {
+        this(CountMinSketch.create(EPSILON, CONFIDENCE, SEED), capacity);
+    }
+
+    private HeavyHitters(CountMinSketch counts, int capacity) {
+        this.counts = counts;
+        this.capacity = capacity;
+    }
+
+    public void add(String key, long weight) {
+        counts.add(key, weight);
+        long estimate = counts.estimateCount(key);
+        if (candidates.containsKey(key) || candidates.size() < capacity) {
+            candidates.put(key, estimate);
+        } else if (estimate > floor) {
+            Map.Entry<String, Long> smallest = smallest();
+            if (estimate > smallest.getValue()) {
+                candidates.remove(smallest.getKey());
+                candidates.put(key, estimate);
+                floor = smallest().getValue();
+            } else {
+                floor = smallest.getValue();
+            }
+        }
+    }
+
+    public HeavyHitters merge(HeavyHitters other) {
+        try {
+            counts.mergeInPlace(other.counts);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Incompatible sketches", e);
+        }
+        List<String> keys = new ArrayList<>(candidates.keySet());
+        keys.addAll(other.candidates.keySet());
+        retainTop(keys);
+        return this;
+    }
+
+    /** The {@code k} heaviest candidates with their estimated weight, heaviest first. */
+    public List<Map.Entry<String, Long>> top(int k) {
+        return candidates.keySet().stream()
+                .map(key -> Map.<String, Long>entry(key, counts.estimateCount(key)))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(k)
+                .toList();
+    }
+
+    public long totalWeight() {
+        return counts.totalCount();
+    }
+
+    public long errorBound() {
+        return (long) Math.ceil(counts.relativeError() * counts.totalCount());
+    }
+
+    public byte[] sketchBytes() {
+        try {
+            return counts.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<String> candidateKeys() {
+        return new ArrayList<>(candidates.keySet());
+    }
+
+    public static HeavyHitters restore(byte[] sketch, Collection<String> keys, int capacity) {
+        try {
+            HeavyHitters restored = new HeavyHitters(CountMinSketch.readFrom(sketch), capacity);
+            restored.retainTop(keys);
+            return restored;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void retainTop(Collection<String> keys) {
+        candidates.clear();
+        keys.stream()
+                .distinct()
+                .map(key -> Map.<String, Long>entry(key, counts.estimateCount(key)))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(capacity)
+                .forEach(e -> candidates.put(e.getKey(), e.getValue()));
+        floor = candidates.size() < capacity ? 0 : smallest().getValue();
+    }
+
+    private Map.Entry<String, Long> smallest() {
+        return candidates.entrySet().stream().min(Comparator.comparingLong(Map.Entry::getValue)).orElseThrow();
+    }
+}
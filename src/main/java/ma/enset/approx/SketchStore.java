@@ -0,0 +1,201 @@
+package ma.enset.approx;
+
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.RowFactory;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+import scala.Tuple2;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * Per-day, mergeable sketches for the approximate analytics mode.
+ * <p>
+ * Distinct users per station and per hour are HyperLogLog sketches built with
+ * Spark's {@code hll_sketch_agg}; top routes by revenue and top stations by
+ * trips are {@link HeavyHitters}. Each day is stored as its own partition, so
+ * any range of days is answered by merging the stored sketches instead of
+ * re-reading and shuffling the rentals.
+ * <p>
+ * In approximate mode the trackers answer the {@link #ANSWERED_QUERIES} in
+ * place of their exact {@code GROUP BY} and global sort.
+ */
+public class SketchStore {
+    /** HLL precision: 2^12 registers, about 1.6% relative standard error. */
+    public static final int LG_CONFIG_K = 12;
+    public static final double HLL_RELATIVE_ERROR = 1.04 / Math.sqrt(1 << LG_CONFIG_K);
+    private static final int CANDIDATES = 64;
+
+    /** Report queries printed from the sketches instead of being run exactly. */
+    public static final Set<String> ANSWERED_QUERIES = Set.of(
+            "exercise4.rentalsByStation", "exercise4.topStation", "bonus.profitableRoutes");
+    private static final int STATION_ROWS = 20;
+    private static final int ROUTE_ROWS = 5;
+
+    private static final StructType HEAVY_HITTERS_SCHEMA = new StructType()
+            .add("kind", DataTypes.StringType)
+            .add("sketch", DataTypes.BinaryType)
+            .add("candidates", DataTypes.createArrayType(DataTypes.StringType))
+            .add("day", DataTypes.StringType);
+
+    private final SparkSession spark;
+    private final Path dir;
+
+    public SketchStore(SparkSession spark, Path dir) {
+        this.spark = spark;
+        this.dir = dir.toAbsolutePath();
+    }
+
+    /**
+     * Builds the sketches of every day present in {@code rentals} and replaces
+     * the stored partitions of those days; other days are left untouched.
+     *
+     * @return the days written, sorted, to pass to the queries below
+     */
+    public List<String> update(Dataset<Row> rentals) {
+        Dataset<Row> byDay = rentals.withColumn("day", date_format(col("start_time"), "yyyy-MM-dd"));
+
+        byDay.groupBy(col("day"), col("start_station"))
+                .agg(expr("hll_sketch_agg(user_id, " + LG_CONFIG_K + ")").as("users"))
+                .write().mode(SaveMode.Overwrite).option("partitionOverwriteMode", "dynamic")
+                .partitionBy("day").parquet(path("users_by_station"));
+
+        byDay.groupBy(col("day"), hour(col("start_time")).as("hour"))
+                .agg(expr("hll_sketch_agg(user_id, " + LG_CONFIG_K + ")").as("users"))
+                .write().mode(SaveMode.Overwrite).option("partitionOverwriteMode", "dynamic")
+                .partitionBy("day").parquet(path("users_by_hour"));
+
+        // One pair of trackers per day and partition, merged per day: only sketches are shuffled
+        JavaPairRDD<String, HeavyHitters[]> daily = byDay
+                .select("day", "start_station", "end_station", "price")
+                .javaRDD()
+                .mapPartitionsToPair(SketchStore::sketchPartition)
+                .reduceByKey((a, b) -> new HeavyHitters[]{a[0].merge(b[0]), a[1].merge(b[1])});
+
+        List<Row> rows = new ArrayList<>();
+        List<String> days = new ArrayList<>();
+        for (Tuple2<String, HeavyHitters[]> day : daily.collect()) {
+            rows.add(heavyHittersRow("routes_by_revenue", day._2()[0], day._1()));
+            rows.add(heavyHittersRow("stations_by_trips", day._2()[1], day._1()));
+            days.add(day._1());
+        }
+        spark.createDataFrame(rows, HEAVY_HITTERS_SCHEMA)
+                .write().mode(SaveMode.Overwrite).option("partitionOverwriteMode", "dynamic")
+                .partitionBy("day").parquet(path("heavy_hitters"));
+        days.sort(null);
+        return days;
+    }
+
+    private static Iterator<Tuple2<String, HeavyHitters[]>> sketchPartition(Iterator<Row> rows) {
+        Map<String, HeavyHitters[]> days = new HashMap<>();
+        while (rows.hasNext()) {
+            Row row = rows.next();
+            if (row.isNullAt(0) || row.isNullAt(1) || row.isNullAt(2) || row.isNullAt(3)) {
+                continue;
+            }
+            HeavyHitters[] sketches = days.computeIfAbsent(row.getString(0),
+                    d -> new HeavyHitters[]{new HeavyHitters(CANDIDATES), new HeavyHitters(CANDIDATES)});
+            sketches[0].add(row.getString(1) + " -> " + row.getString(2), Math.round(row.getDouble(3) * 100));
+            sketches[1].add(row.getString(1), 1);
+        }
+        List<Tuple2<String, HeavyHitters[]>> out = new ArrayList<>(days.size());
+        days.forEach((day, sketches) -> out.add(new Tuple2<>(day, sketches)));
+        return out.iterator();
+    }
+
+    private static Row heavyHittersRow(String kind, HeavyHitters sketch, String day) {
+        return RowFactory.create(kind, sketch.sketchBytes(), sketch.candidateKeys(), day);
+    }
+
+    /**
+     * Estimated distinct users per value of {@code dimension} ({@code start_station}
+     * or {@code hour}) over the stored {@code days}, with bounds at two standard
+     * errors (about 95%).
+     */
+    public Dataset<Row> distinctUsers(String dimension, List<String> days) {
+        String table = "hour".equals(dimension) ? "users_by_hour" : "users_by_station";
+        return read(table, days)
+                .groupBy(col(dimension))
+                .agg(expr("hll_sketch_estimate(hll_union_agg(users))").as("distinct_users"))
+                .withColumn("lower_bound", floor(col("distinct_users").multiply(1 - 2 * HLL_RELATIVE_ERROR)))
+                .withColumn("upper_bound", ceil(col("distinct_users").multiply(1 + 2 * HLL_RELATIVE_ERROR)))
+                .orderBy(col(dimension));
+    }
+
+    /**
+     * Merges the stored daily trackers of {@code kind} over {@code days}; an
+     * empty tracker when none is stored.
+     */
+    public HeavyHitters heavyHitters(String kind, List<String> days) {
+        HeavyHitters merged = new HeavyHitters(CANDIDATES);
+        for (Row row : read("heavy_hitters", days)
+                .filter(col("kind").equalTo(kind))
+                .select("sketch", "candidates")
+                .collectAsList()) {
+            HeavyHitters day = HeavyHitters.restore((byte[]) row.get(0), row.getList(1), CANDIDATES);
+            merged = merged.merge(day);
+        }
+        return merged;
+    }
+
+    /**
+     * Prints the approximate answers over {@code days} only, so partitions left
+     * by earlier runs on other data are never merged in.
+     */
+    public void printReport(List<String> days) {
+        if (days.isEmpty()) {
+            System.out.println("(no data: no rentals were loaded, nothing to sketch)");
+            return;
+        }
+        System.out.println("Days: " + days.size() + " (" + days.get(0) + " .. " + days.get(days.size() - 1) + ")\n");
+        System.out.println("1. Distinct users by start station (HLL, ±"
+                + String.format("%.1f", 200 * HLL_RELATIVE_ERROR) + "% at ~95%):");
+        distinctUsers("start_station", days).show(false);
+
+        System.out.println("\n2. Distinct users by hour (HLL):");
+        distinctUsers("hour", days).show(24, false);
+
+        HeavyHitters stations = heavyHitters("stations_by_trips", days);
+        String stationBound = " (Count-Min, overestimate ≤ " + stations.errorBound() + " trips):";
+        System.out.println("\n3. Rentals count by start station, top " + STATION_ROWS + stationBound);
+        printTop(stations, STATION_ROWS);
+        System.out.println("\n4. Station with highest number of rentals" + stationBound);
+        printTop(stations, 1);
+
+        HeavyHitters routes = heavyHitters("routes_by_revenue", days);
+        System.out.println("\n5. Most profitable routes, top " + ROUTE_ROWS + " (Count-Min, overestimate ≤ "
+                + String.format("%.2f", routes.errorBound() / 100.0) + " with "
+                + (int) (HeavyHitters.CONFIDENCE * 100) + "% confidence):");
+        for (Map.Entry<String, Long> route : routes.top(ROUTE_ROWS)) {
+            System.out.printf("  %-30s %12.2f%n", route.getKey(), route.getValue() / 100.0);
+        }
+    }
+
+    private static void printTop(HeavyHitters stations, int k) {
+        for (Map.Entry<String, Long> station : stations.top(k)) {
+            System.out.printf("  %-30s %12d%n", station.getKey(), station.getValue());
+        }
+    }
+
+    // The day partition column is inferred back as a date, so compare its text form
+    private Dataset<Row> read(String table, List<String> days) {
+        return spark.read().parquet(path(table))
+                .filter(col("day").cast("string").isin(days.toArray()));
+    }
+
+    private String path(String table) {
+        return dir.resolve(table).toString();
+    }
+}
@@ -0,0 +1,69 @@
+package ma.enset.columnar;
+
+import java.util.List;
+
+/**
+ * A small result table produced by {@link ColumnarReport}, printed with the
+ * same layout as Spark's {@code Dataset.show()}.
+ *
+ * @param columns   column names
+ * @param rows      materialized rows, possibly fewer than {@code totalRows}
+ * @param totalRows number of rows the query returns
+ */
+public record ColumnTable(List<String> columns, List<Object[]> rows, long totalRows) {
+    private static final int MIN_COLUMN_WIDTH = 3;
+    private static final int TRUNCATE_LENGTH = 20;
+
+    public void show(int numRows, boolean truncate) {
+        System.out.println(showString(numRows, truncate));
+    }
+
+    /**
+     * Mirrors {@code Dataset.showString}: cells are truncated to 20 characters
+     * and right-aligned when {@code truncate} is set, left-aligned otherwise.
+     */
+    public String showString(int numRows, boolean truncate) {
+        int shown = (int) Math.min(numRows, Math.min(totalRows, rows.size()));
+        String[][] cells = new String[shown + 1][columns.size()];
+        int[] widths = new int[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            cells[0][c] = columns.get(c);
+            for (int r = 0; r < shown; r++) {
+                Object value = rows.get(r)[c];
+                String cell = value == null ? "NULL" : value.toString();
+                if (truncate && cell.length() > TRUNCATE_LENGTH) {
+                    cell = cell.substring(0, TRUNCATE_LENGTH - 3) + "...";
+                }
+                cells[r + 1][c] = cell;
+            }
+            widths[c] = MIN_COLUMN_WIDTH;
+            for (String[] row : cells) {
+                widths[c] = Math.max(widths[c], row[c].length());
+            }
+        }
+
+        StringBuilder separator = new StringBuilder("+");
+        for (int width : widths) {
+            separator.append("-".repeat(width)).append('+');
+        }
+        separator.append('\n');
+
+        StringBuilder out = new StringBuilder(separator);
+        for (int r = 0; r < cells.length; r++) {
+            out.append('|');
+            for (int c = 0; c < widths.length; c++) {
+                String padding = " ".repeat(widths[c] - cells[r][c].length());
+                out.append(truncate ? padding + cells[r][c] : cells[r][c] + padding).append('|');
+            }
+            out.append('\n');
+            if (r == 0) {
+                out.append(separator);
+            }
+        }
+        out.append(separator);
+        if (totalRows > numRows) {
+            out.append("only showing top ").append(numRows).append(numRows == 1 ? " row" : " rows").append('\n');
+        }
+        return out.toString();
+    }
+}
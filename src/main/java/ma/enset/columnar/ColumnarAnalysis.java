@@ -0,0 +1,129 @@
+package ma.enset.columnar;
+
+import ma.enset.metrics.QueryMetrics;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The exercise report answered by the in-process {@link ColumnarReport}
+ * instead of Spark, for inputs small enough that starting a SparkSession
+ * costs more than the queries themselves.
+ * <p>
+ * Prints the same sections and tables as {@code BikeRentalAnalysis}. Layout
+ * options, the rollup and the sketches need Spark and are not available here,
+ * and neither are Spark's job, stage and shuffle metrics: each query only
+ * reports its wall time.
+ */
+public final class ColumnarAnalysis {
+    /** Default input size below which {@code BikeRentalAnalysis} uses this engine. */
+    public static final long DEFAULT_THRESHOLD_BYTES = 8L << 20;
+
+    private static final String SCHEMA_TREE = """
+            root
+             |-- rental_id: integer (nullable = true)
+             |-- user_id: integer (nullable = true)
+             |-- age: integer (nullable = true)
+             |-- gender: string (nullable = true)
+             |-- start_time: timestamp (nullable = true)
+             |-- end_time: timestamp (nullable = true)
+             |-- start_station: string (nullable = true)
+             |-- end_station: string (nullable = true)
+             |-- duration_minutes: integer (nullable = true)
+             |-- price: double (nullable = true)
+            """;
+
+    private ColumnarAnalysis() {
+    }
+
+    public static boolean eligible(Path csv, long thresholdBytes) {
+        try {
+            return thresholdBytes > 0 && Files.isRegularFile(csv) && Files.size(csv) <= thresholdBytes;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints the report for {@code csv} and returns the wall time of the load
+     * and of every query, under the same names as the Spark path. Returns
+     * {@code null}, having printed nothing, when the file holds rows the
+     * columnar parser does not accept (empty, quoted or malformed fields); the
+     * caller then runs the Spark path, which reads quoted fields and
+     * quarantines rows with an empty or malformed field.
+     */
+    public static List<QueryMetrics> run(Path csv) {
+        long start = System.nanoTime();
+        RentalColumns data;
+        try {
+            data = RentalColumns.parse(csv);
+        } catch (IOException e) {
+            System.err.println("Columnar engine unavailable, using Spark: " + e.getMessage());
+            return null;
+        }
+        if (data == null || data.size == 0) {
+            return null;
+        }
+        double loadMillis = (System.nanoTime() - start) / 1e6;
+        List<QueryMetrics> metrics = new ArrayList<>();
+        metrics.add(QueryMetrics.wallTimeOnly("exercise1.load", Math.round(loadMillis)));
+
+        System.out.println("\n========================================");
+        System.out.println("BIKE SHARING ANALYSIS - COLUMNAR ENGINE");
+        System.out.println("========================================\n");
+
+        System.out.println("\n--- EXERCISE 1: Data Loading & Exploration ---\n");
+        System.out.println("1. Loading data from " + csv + "...");
+        System.out.println("Chemin du fichier: " + csv.toAbsolutePath());
+        System.out.printf("✓ Data loaded successfully (%d rows in %.1f ms, no Spark session)%n", data.size, loadMillis);
+
+        System.out.println("\n2. Schema:");
+        System.out.println(SCHEMA_TREE);
+
+        System.out.println("\n3. First 5 rows:");
+        firstRows(data, 5).show(5, false);
+
+        System.out.println("\n4. Total number of rentals: " + data.size + "\n");
+
+        System.out.println("\n--- EXERCISE 2: Create Temporary View ---\n");
+        System.out.println("✓ Columns decoded in memory (no temporary view needed)");
+        new ColumnTable(List.of("count"), List.<Object[]>of(new Object[]{(long) data.size}), 1).show(20, true);
+
+        ColumnarReport report = new ColumnarReport(data);
+        String section = null;
+        for (ReportQuery query : ReportQueries.all()) {
+            if (!query.section().equals(section)) {
+                section = query.section();
+                System.out.println("\n--- " + section + " ---\n");
+            }
+            System.out.println(query.heading());
+            long queryStart = System.nanoTime();
+            ColumnTable result = report.result(query, query.rows());
+            result.show(query.rows(), false);
+            if (query.printTotal()) {
+                System.out.println("Total: " + result.totalRows() + " rentals\n");
+            }
+            metrics.add(QueryMetrics.wallTimeOnly(query.name(), (System.nanoTime() - queryStart) / 1_000_000));
+        }
+
+        System.out.printf("%nColumnar report completed in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        return metrics;
+    }
+
+    static ColumnTable firstRows(RentalColumns data, int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, data.size); i++) {
+            rows.add(new Object[]{data.rentalId[i], data.userId[i], data.age[i], data.genders[data.gender[i]],
+                    RentalColumns.formatTimestamp(data.startTime[i]), RentalColumns.formatTimestamp(data.endTime[i]),
+                    data.stations[data.startStation[i]], data.stations[data.endStation[i]],
+                    data.duration[i], data.price[i]});
+        }
+        return new ColumnTable(List.of("rental_id", "user_id", "age", "gender", "start_time", "end_time",
+                "start_station", "end_station", "duration_minutes", "price"), rows, data.size);
+    }
+}
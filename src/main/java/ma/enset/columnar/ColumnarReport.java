@@ -0,0 +1,320 @@
+package ma.enset.columnar;
+
+import ma.enset.report.ReportQuery;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Answers the report queries straight from {@link RentalColumns}, without a
+ * SparkSession.
+ * <p>
+ * All aggregate queries are served by one fused pass: the rows are split into
+ * chunks, each chunk fills its own primitive accumulator arrays on the common
+ * fork-join pool, and the chunk results are summed. Row-level queries read the
+ * columns directly. Every query returns the same columns, values and order as
+ * its SQL in {@link ma.enset.report.ReportQueries}; rows tied on the sort key
+ * are ordered by their grouping key.
+ */
+public class ColumnarReport {
+    private static final int CHUNK_ROWS = 1 << 15;
+    private static final int HOURS = 24;
+
+    static final String[] AGE_GROUPS = {"18-30", "31-40", "41-50", "51+", "Unknown"};
+    static final String[] DURATION_CATEGORIES =
+            {"Short (0-15 min)", "Medium (16-30 min)", "Long (31-60 min)", "Very Long (60+ min)"};
+
+    private final RentalColumns data;
+    private Aggregates aggregates;
+
+    public ColumnarReport(RentalColumns data) {
+        this.data = data;
+    }
+
+    /** Runs {@code query} as written, materializing at most {@code maxRows} rows. */
+    public ColumnTable result(ReportQuery query, int maxRows) {
+        return table(query.name(), true, maxRows);
+    }
+
+    /** Runs {@code query} without its {@code LIMIT} clause, materializing every row. */
+    public ColumnTable unlimited(ReportQuery query) {
+        return table(query.name(), false, Integer.MAX_VALUE);
+    }
+
+    private ColumnTable table(String name, boolean limit, int maxRows) {
+        return switch (name) {
+            case "exercise3.longRentals" -> longRentals(maxRows);
+            case "exercise3.stationARentals" -> stationRentals("Station A", maxRows);
+            case "exercise3.totalRevenue" -> single("total_revenue",
+                    data.size == 0 ? null : aggregates().totalCents / 100.0);
+            case "exercise4.rentalsByStation" -> rentalsByStation(0, HOURS - 1, -1);
+            case "exercise4.avgDurationByStation" -> avgDurationByStation();
+            case "exercise4.topStation" -> rentalsByStation(0, HOURS - 1, limit ? 1 : -1);
+            case "exercise5.extractedHours" -> extractedHours(limit ? 10 : data.size, maxRows);
+            case "exercise5.rentalsByHour" -> rentalsByHour(false, -1);
+            case "exercise5.peakHours" -> rentalsByHour(true, limit ? 3 : -1);
+            case "exercise5.morningStation" -> rentalsByStation(7, 12, limit ? 1 : -1);
+            case "exercise6.averageAge" -> single("average_age",
+                    data.size == 0 ? null : round2((double) aggregates().ageSum / data.size));
+            case "exercise6.rentalsByGender" -> counts("gender", data.genders, aggregates().genderCount);
+            case "exercise6.rentalsByAgeGroup" -> counts("age_group", AGE_GROUPS, aggregates().ageGroupCount);
+            case "bonus.profitableRoutes" -> profitableRoutes(limit ? 5 : -1);
+            case "bonus.priceByDuration" -> priceByDuration();
+            default -> throw new IllegalArgumentException("No columnar plan for query: " + name);
+        };
+    }
+
+    private Aggregates aggregates() {
+        if (aggregates == null) {
+            aggregates = Aggregates.compute(data);
+        }
+        return aggregates;
+    }
+
+    // ===== Row-level queries =====
+
+    private ColumnTable longRentals(int maxRows) {
+        // Sort key packs (descending duration, row index) in one long: no boxing, stable on ties
+        long[] keys = new long[data.size];
+        int matches = 0;
+        for (int i = 0; i < data.size; i++) {
+            if (data.duration[i] > 30) {
+                keys[matches++] = ((long) (Integer.MAX_VALUE - data.duration[i]) << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, matches);
+        List<Object[]> rows = new ArrayList<>();
+        for (int k = 0; k < Math.min(matches, maxRows); k++) {
+            int i = (int) keys[k];
+            rows.add(new Object[]{data.rentalId[i], data.userId[i], data.stations[data.startStation[i]],
+                    data.stations[data.endStation[i]], data.duration[i]});
+        }
+        return new ColumnTable(List.of("rental_id", "user_id", "start_station", "end_station", "duration_minutes"),
+                rows, matches);
+    }
+
+    private ColumnTable stationRentals(String station, int maxRows) {
+        int code = Arrays.asList(data.stations).indexOf(station);
+        List<Object[]> rows = new ArrayList<>();
+        long matches = 0;
+        for (int i = 0; code >= 0 && i < data.size; i++) {
+            if (data.startStation[i] == code && matches++ < maxRows) {
+                rows.add(new Object[]{data.rentalId[i], data.userId[i], RentalColumns.formatTimestamp(data.startTime[i]),
+                        data.stations[data.endStation[i]], data.duration[i]});
+            }
+        }
+        return new ColumnTable(List.of("rental_id", "user_id", "start_time", "end_station", "duration_minutes"),
+                rows, matches);
+    }
+
+    private ColumnTable extractedHours(int limit, int maxRows) {
+        int total = Math.min(limit, data.size);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < Math.min(total, maxRows); i++) {
+            rows.add(new Object[]{data.rentalId[i], RentalColumns.formatTimestamp(data.startTime[i]),
+                    RentalColumns.hourOf(data.startTime[i])});
+        }
+        return new ColumnTable(List.of("rental_id", "start_time", "hour"), rows, total);
+    }
+
+    // ===== Aggregate queries =====
+
+    private ColumnTable rentalsByStation(int fromHour, int toHour, int limit) {
+        long[] stationHour = aggregates().stationHourCount;
+        List<Object[]> rows = new ArrayList<>();
+        for (int s = 0; s < data.stations.length; s++) {
+            long count = 0;
+            for (int h = fromHour; h <= toHour; h++) {
+                count += stationHour[s * HOURS + h];
+            }
+            if (count > 0) {
+                rows.add(new Object[]{data.stations[s], count});
+            }
+        }
+        return sorted(List.of("start_station", "rental_count"), rows, descending(1), limit);
+    }
+
+    private ColumnTable avgDurationByStation() {
+        Aggregates agg = aggregates();
+        List<Object[]> rows = new ArrayList<>();
+        for (int s = 0; s < data.stations.length; s++) {
+            if (agg.stationCount[s] > 0) {
+                rows.add(new Object[]{data.stations[s], round2((double) agg.stationDurationSum[s] / agg.stationCount[s])});
+            }
+        }
+        return sorted(List.of("start_station", "avg_duration_minutes"), rows, descending(1), -1);
+    }
+
+    private ColumnTable rentalsByHour(boolean byCount, int limit) {
+        long[] stationHour = aggregates().stationHourCount;
+        List<Object[]> rows = new ArrayList<>();
+        for (int h = 0; h < HOURS; h++) {
+            long count = 0;
+            for (int s = 0; s < data.stations.length; s++) {
+                count += stationHour[s * HOURS + h];
+            }
+            if (count > 0) {
+                rows.add(new Object[]{h, count});
+            }
+        }
+        return sorted(List.of("hour", "rental_count"), rows, byCount ? descending(1) : ascending(0), limit);
+    }
+
+    private ColumnTable counts(String column, String[] keys, long[] counts) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int k = 0; k < keys.length; k++) {
+            if (counts[k] > 0) {
+                rows.add(new Object[]{keys[k], counts[k]});
+            }
+        }
+        return sorted(List.of(column, "rental_count"), rows, descending(1), -1);
+    }
+
+    private ColumnTable profitableRoutes(int limit) {
+        Aggregates agg = aggregates();
+        int stations = data.stations.length;
+        List<Object[]> rows = new ArrayList<>();
+        for (int route = 0; route < stations * stations; route++) {
+            if (agg.routeCount[route] > 0) {
+                rows.add(new Object[]{data.stations[route / stations], data.stations[route % stations],
+                        agg.routeCount[route], agg.routeCents[route] / 100.0});
+            }
+        }
+        return sorted(List.of("start_station", "end_station", "trips", "total_revenue"), rows, descending(3), limit);
+    }
+
+    private ColumnTable priceByDuration() {
+        Aggregates agg = aggregates();
+        List<Object[]> rows = new ArrayList<>();
+        for (int c = 0; c < DURATION_CATEGORIES.length; c++) {
+            if (agg.durationCount[c] > 0) {
+                rows.add(new Object[]{DURATION_CATEGORIES[c], agg.durationCount[c],
+                        round2(agg.durationCents[c] / 100.0 / agg.durationCount[c])});
+            }
+        }
+        return sorted(List.of("duration_category", "rental_count", "avg_price"), rows, ascending(2), -1);
+    }
+
+    private static ColumnTable single(String column, Object value) {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{value});
+        return new ColumnTable(List.of(column), rows, 1);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Object[]> ascending(int column) {
+        return (a, b) -> ((Comparable) a[column]).compareTo(b[column]);
+    }
+
+    private static Comparator<Object[]> descending(int column) {
+        return ascending(column).reversed();
+    }
+
+    // Ties are broken on the leading key columns so results do not depend on chunking
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ColumnTable sorted(List<String> columns, List<Object[]> rows, Comparator<Object[]> order, int limit) {
+        rows.sort(order.thenComparing((a, b) -> {
+            for (int c = 0; c < a.length; c++) {
+                int cmp = ((Comparable) a[c]).compareTo(b[c]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }));
+        List<Object[]> limited = limit >= 0 && rows.size() > limit ? rows.subList(0, limit) : rows;
+        return new ColumnTable(columns, limited, limited.size());
+    }
+
+    /** {@code ROUND(x, 2)} on a double, which Spark evaluates HALF_UP on the shortest decimal form. */
+    static double round2(double value) {
+        return new BigDecimal(Double.toString(value)).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    /** Per-chunk accumulators, merged by summing. */
+    static final class Aggregates {
+        final long[] stationHourCount;
+        final long[] stationCount;
+        final long[] stationDurationSum;
+        final long[] routeCount;
+        final long[] routeCents;
+        final long[] genderCount;
+        final long[] ageGroupCount = new long[AGE_GROUPS.length];
+        final long[] durationCount = new long[DURATION_CATEGORIES.length];
+        final long[] durationCents = new long[DURATION_CATEGORIES.length];
+        long ageSum;
+        long totalCents;
+
+        private Aggregates(int stations, int genders) {
+            stationHourCount = new long[stations * HOURS];
+            stationCount = new long[stations];
+            stationDurationSum = new long[stations];
+            routeCount = new long[stations * stations];
+            routeCents = new long[stations * stations];
+            genderCount = new long[genders];
+        }
+
+        static Aggregates compute(RentalColumns data) {
+            int chunks = Math.max(1, (data.size + CHUNK_ROWS - 1) / CHUNK_ROWS);
+            return IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(c -> new Aggregates(data.stations.length, data.genders.length)
+                            .accumulate(data, (int) ((long) data.size * c / chunks),
+                                    (int) ((long) data.size * (c + 1) / chunks)))
+                    .reduce(Aggregates::merge)
+                    .orElseGet(() -> new Aggregates(data.stations.length, data.genders.length));
+        }
+
+        private Aggregates accumulate(RentalColumns data, int from, int to) {
+            int stations = data.stations.length;
+            for (int i = from; i < to; i++) {
+                int start = data.startStation[i];
+                int route = start * stations + data.endStation[i];
+                int duration = data.duration[i];
+                int age = data.age[i];
+                long cents = data.priceCents[i];
+
+                stationHourCount[start * HOURS + RentalColumns.hourOf(data.startTime[i])]++;
+                stationCount[start]++;
+                stationDurationSum[start] += duration;
+                routeCount[route]++;
+                routeCents[route] += cents;
+                genderCount[data.gender[i]]++;
+                ageGroupCount[age >= 18 && age <= 30 ? 0 : age >= 31 && age <= 40 ? 1
+                        : age >= 41 && age <= 50 ? 2 : age >= 51 ? 3 : 4]++;
+                int category = duration <= 15 ? 0 : duration <= 30 ? 1 : duration <= 60 ? 2 : 3;
+                durationCount[category]++;
+                durationCents[category] += cents;
+                ageSum += age;
+                totalCents += cents;
+            }
+            return this;
+        }
+
+        private Aggregates merge(Aggregates other) {
+            add(stationHourCount, other.stationHourCount);
+            add(stationCount, other.stationCount);
+            add(stationDurationSum, other.stationDurationSum);
+            add(routeCount, other.routeCount);
+            add(routeCents, other.routeCents);
+            add(genderCount, other.genderCount);
+            add(ageGroupCount, other.ageGroupCount);
+            add(durationCount, other.durationCount);
+            add(durationCents, other.durationCents);
+            ageSum += other.ageSum;
+            totalCents += other.totalCents;
+            return this;
+        }
+
+        private static void add(long[] into, long[] values) {
+            for (int i = 0; i < into.length; i++) {
+                into[i] += values[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ma.enset.columnar;
+
+import ma.enset.data.DataGenerator;
+import ma.enset.data.RentalLoader;
+import ma.enset.data.RentalSchema;
+import ma.enset.data.RentalSession;
+import ma.enset.report.ReportEngine;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that {@link ColumnarReport} returns what Spark returns for every
+ * report query, on generated datasets of a few sizes.
+ * <p>
+ * The data is loaded with {@link RentalLoader#load}, as the Spark report does.
+ * Every query is checked in its raw form over the cached rows and, for the
+ * aggregates, also through {@link ReportEngine#result} over the cube, which is
+ * what the report runs and which sums revenue as decimals.
+ * <p>
+ * For each query the full result (without {@code LIMIT}) must hold the same
+ * rows as Spark's. When the query has an {@code ORDER BY}, the full and the
+ * limited results must also list the same values of the sort column in the
+ * same order; rows tied on that column may come in any order, as they can in
+ * Spark. It also checks that a file with a
+ * malformed row is rejected by the columnar parser and quarantined by the
+ * Spark path.
+ * <p>
+ * Usage: {@code ParityCheck [--rows N,N,...] [--seed N] [--dir PATH]}; exits
+ * with status 1 on any mismatch ({@code mvn -Pparity verify}).
+ */
+public final class ParityCheck {
+    private static final Pattern LIMIT = Pattern.compile("\\s+LIMIT\\s+\\d+\\s*$");
+    private static final Pattern ORDER_BY = Pattern.compile("ORDER BY (\\w+)");
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern(RentalSchema.TIMESTAMP_PATTERN);
+
+    private ParityCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        long[] sizes = {1, 1000, 50_000};
+        long seed = 42;
+        Path dir = Path.of("target", "parity-data");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rows" -> sizes = Arrays.stream(args[++i].split(",")).mapToLong(Long::parseLong).toArray();
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--dir" -> dir = Path.of(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        Files.createDirectories(dir);
+
+        SparkSession spark = RentalSession.builder("Columnar Parity Check").getOrCreate();
+        spark.sparkContext().setLogLevel("WARN");
+
+        List<String> failures = new ArrayList<>();
+        try {
+            for (long rows : sizes) {
+                Path csv = dir.resolve("rentals-" + rows + ".csv");
+                DataGenerator.generate(csv, rows, 1, seed, 5);
+                failures.addAll(compare(spark, csv, dir.resolve("quarantine")));
+            }
+            failures.addAll(checkMalformedRejected(spark, dir.resolve("malformed.csv"), dir.resolve("quarantine")));
+        } finally {
+            spark.stop();
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("Columnar engine matches Spark on " + ReportQueries.all().size()
+                    + " queries x " + sizes.length + " datasets");
+            return;
+        }
+        failures.forEach(f -> System.err.println("MISMATCH " + f));
+        System.exit(1);
+    }
+
+    static List<String> compare(SparkSession spark, Path csv, Path quarantine) throws IOException {
+        RentalColumns data = RentalColumns.parse(csv);
+        if (data == null) {
+            return List.of(csv + ": rejected by the columnar parser");
+        }
+        // Loaded the way BikeRentalAnalysis loads it: cached rows, aggregates answered from the cube
+        spark.catalog().clearCache();
+        RentalLoader.load(spark, csv.toAbsolutePath().toString(), quarantine.toAbsolutePath().toString())
+                .rentals().createOrReplaceTempView("bike_rentals_view");
+        ReportEngine engine = new ReportEngine(spark);
+        ColumnarReport report = new ColumnarReport(data);
+
+        List<String> failures = new ArrayList<>();
+        for (ReportQuery query : ReportQueries.all()) {
+            String where = csv.getFileName() + " " + query.name();
+            failures.addAll(compare(spark, where + ": ", query, query.sql(), spark.sql(query.sql()), report));
+            if (query.isAggregate()) {
+                failures.addAll(compare(spark, where + " (cube): ", query, query.cubeSql(), engine.result(query), report));
+            }
+        }
+        return failures;
+    }
+
+    // sql is the form Spark runs, limited is its result as the report gets it
+    private static List<String> compare(SparkSession spark, String where, ReportQuery query, String sql,
+                                        Dataset<Row> limited, ColumnarReport report) {
+        List<List<String>> sparkFull = collect(spark.sql(LIMIT.matcher(sql).replaceAll("")));
+        ColumnTable columnarFull = report.unlimited(query);
+        List<List<String>> columnarRows = normalize(columnarFull.rows());
+        if (!sameRows(sparkFull, columnarRows)) {
+            return List.of(where + "rows differ, Spark " + sparkFull + " vs columnar " + columnarRows);
+        }
+        Matcher order = ORDER_BY.matcher(sql);
+        int sortColumn = order.find() ? columnarFull.columns().indexOf(order.group(1)) : -1;
+        if (sortColumn >= 0 && !sortKeys(sparkFull, sortColumn).equals(sortKeys(columnarRows, sortColumn))) {
+            return List.of(where + "order differs, Spark " + sortKeys(sparkFull, sortColumn)
+                    + " vs columnar " + sortKeys(columnarRows, sortColumn));
+        }
+        if (!LIMIT.matcher(sql).find()) {
+            return List.of();
+        }
+        List<List<String>> sparkLimited = collect(limited);
+        List<List<String>> columnarLimited = normalize(report.result(query, Integer.MAX_VALUE).rows());
+        boolean same = sortColumn >= 0
+                ? sortKeys(sparkLimited, sortColumn).equals(sortKeys(columnarLimited, sortColumn))
+                : sameRows(sparkLimited, columnarLimited);
+        return same ? List.of()
+                : List.of(where + "limited rows differ, Spark " + sparkLimited + " vs columnar " + columnarLimited);
+    }
+
+    // An empty price must send the file back to Spark, which quarantines the row
+    static List<String> checkMalformedRejected(SparkSession spark, Path csv, Path quarantine) throws IOException {
+        Files.writeString(csv, "rental_id,user_id,age,gender,start_time,end_time,"
+                + "start_station,end_station,duration_minutes,price\n"
+                + "1,10,25,M,2024-01-01 08:00:00,2024-01-01 08:20:00,Station A,Station B,20,\n");
+        if (RentalColumns.parse(csv) != null) {
+            return List.of(csv + ": malformed row accepted by the columnar parser");
+        }
+        RentalLoader.LoadResult loaded = RentalLoader.load(spark, csv.toAbsolutePath().toString(),
+                quarantine.toAbsolutePath().toString());
+        long kept = loaded.rentals().count();
+        return loaded.malformedCount() == 1 && kept == 0 ? List.of()
+                : List.of(csv + ": row with an empty price not quarantined by Spark ("
+                        + loaded.malformedCount() + " quarantined, " + kept + " kept)");
+    }
+
+    private static List<List<String>> collect(Dataset<Row> result) {
+        List<List<String>> rows = new ArrayList<>();
+        for (Row row : result.collectAsList()) {
+            List<String> values = new ArrayList<>(row.size());
+            for (int i = 0; i < row.size(); i++) {
+                Object value = row.get(i);
+                values.add(value instanceof Timestamp ts ? ts.toLocalDateTime().format(TIMESTAMP) : Objects.toString(value));
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static List<List<String>> normalize(List<Object[]> rows) {
+        List<List<String>> values = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            List<String> strings = new ArrayList<>(row.length);
+            for (Object value : row) {
+                strings.add(Objects.toString(value));
+            }
+            values.add(strings);
+        }
+        return values;
+    }
+
+    private static boolean sameRows(List<List<String>> expected, List<List<String>> actual) {
+        Map<List<String>, Integer> counts = new HashMap<>();
+        expected.forEach(row -> counts.merge(row, 1, Integer::sum));
+        actual.forEach(row -> counts.merge(row, -1, Integer::sum));
+        return counts.values().stream().allMatch(c -> c == 0);
+    }
+
+    private static List<String> sortKeys(List<List<String>> rows, int column) {
+        return rows.stream().map(row -> row.get(column)).toList();
+    }
+}
@@ -0,0 +1,406 @@
+package ma.enset.columnar;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The rental CSV decoded into primitive column arrays: ints for ids, ages and
+ * durations, epoch seconds for timestamps, dictionary codes for stations and
+ * genders, and doubles for prices.
+ * <p>
+ * The file is memory-mapped and parsed byte by byte, allocating only the
+ * arrays and one entry per distinct dictionary value. Only the layout written
+ * by {@code DataGenerator} is accepted: any quoted, empty or unparsable field
+ * makes {@link #parse} return {@code null} so the caller can fall back to
+ * Spark, which reads quoted fields and quarantines rows with an empty or
+ * malformed field.
+ * <p>
+ * Timestamps are read as UTC wall-clock time, so the hour of day is the one
+ * written in the file. Every Spark session is built by
+ * {@link ma.enset.data.RentalSession} with {@code spark.sql.session.timeZone=UTC}
+ * for the same reason: in a zone with daylight saving time, a time in the
+ * spring-forward gap would otherwise be moved to the next hour.
+ */
+public final class RentalColumns {
+    private static final int FIELDS = 10;
+    private static final int MAX_PRICE_DECIMALS = 2;
+
+    public final int size;
+    public final int[] rentalId;
+    public final int[] userId;
+    public final int[] age;
+    public final byte[] gender;
+    public final long[] startTime;
+    public final long[] endTime;
+    public final int[] startStation;
+    public final int[] endStation;
+    public final int[] duration;
+    public final double[] price;
+    /** Price in cents, exact for prices with at most two decimals. */
+    public final long[] priceCents;
+    public final String[] stations;
+    public final String[] genders;
+
+    private RentalColumns(Parser p) {
+        size = p.rows;
+        rentalId = Arrays.copyOf(p.rentalId, size);
+        userId = Arrays.copyOf(p.userId, size);
+        age = Arrays.copyOf(p.age, size);
+        gender = Arrays.copyOf(p.gender, size);
+        startTime = Arrays.copyOf(p.startTime, size);
+        endTime = Arrays.copyOf(p.endTime, size);
+        startStation = Arrays.copyOf(p.startStation, size);
+        endStation = Arrays.copyOf(p.endStation, size);
+        duration = Arrays.copyOf(p.duration, size);
+        price = Arrays.copyOf(p.price, size);
+        priceCents = Arrays.copyOf(p.priceCents, size);
+        stations = p.stationDictionary.values();
+        genders = p.genderDictionary.values();
+    }
+
+    /** Parses {@code csv}, or returns {@code null} if it contains a row the fast path does not support. */
+    public static RentalColumns parse(Path csv) throws IOException {
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Parser parser = new Parser(buffer);
+            return parser.parse() ? new RentalColumns(parser) : null;
+        }
+    }
+
+    /** Hour of day of an epoch-second timestamp (timestamps are stored as UTC wall-clock time). */
+    public static int hourOf(long epochSecond) {
+        return (int) Math.floorMod(epochSecond, 86_400L) / 3600;
+    }
+
+    /** Formats an epoch-second timestamp back to {@code yyyy-MM-dd HH:mm:ss}. */
+    public static String formatTimestamp(long epochSecond) {
+        long days = Math.floorDiv(epochSecond, 86_400L);
+        int secondOfDay = (int) Math.floorMod(epochSecond, 86_400L);
+        // civil_from_days, H. Hinnant
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return String.format("%04d-%02d-%02d %02d:%02d:%02d", year, month, day,
+                secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+    }
+
+    private static long epochSecond(int year, int month, int day, int hour, int minute, int second) {
+        // days_from_civil, H. Hinnant
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146_097L + doe - 719_468;
+        return days * 86_400 + hour * 3600L + minute * 60L + second;
+    }
+
+    private static final class Parser {
+        private final MappedByteBuffer in;
+        private final int limit;
+        private int pos;
+
+        private int rows;
+        private int[] rentalId = new int[1024];
+        private int[] userId = new int[1024];
+        private int[] age = new int[1024];
+        private byte[] gender = new byte[1024];
+        private long[] startTime = new long[1024];
+        private long[] endTime = new long[1024];
+        private int[] startStation = new int[1024];
+        private int[] endStation = new int[1024];
+        private int[] duration = new int[1024];
+        private double[] price = new double[1024];
+        private long[] priceCents = new long[1024];
+        private final Dictionary stationDictionary = new Dictionary();
+        private final Dictionary genderDictionary = new Dictionary();
+
+        // Bounds of the current field, set by nextField()
+        private int start;
+        private int end;
+
+        Parser(MappedByteBuffer in) {
+            this.in = in;
+            this.limit = in.limit();
+        }
+
+        boolean parse() {
+            skipLine();
+            while (pos < limit) {
+                if (lineIsBlank()) {
+                    skipLine();
+                    continue;
+                }
+                if (rows == rentalId.length) {
+                    grow();
+                }
+                if (!parseRow(rows)) {
+                    return false;
+                }
+                rows++;
+            }
+            return true;
+        }
+
+        private boolean parseRow(int row) {
+            for (int field = 0; field < FIELDS; field++) {
+                if (!nextField(field == FIELDS - 1)) {
+                    return false;
+                }
+                boolean ok = switch (field) {
+                    case 0 -> (rentalId[row] = parseInt()) != Integer.MIN_VALUE;
+                    case 1 -> (userId[row] = parseInt()) != Integer.MIN_VALUE;
+                    case 2 -> (age[row] = parseInt()) != Integer.MIN_VALUE;
+                    case 3 -> {
+                        int code = genderDictionary.code(in, start, end);
+                        gender[row] = (byte) code;
+                        yield code < Byte.MAX_VALUE;
+                    }
+                    case 4 -> (startTime[row] = parseTimestamp()) != Long.MIN_VALUE;
+                    case 5 -> (endTime[row] = parseTimestamp()) != Long.MIN_VALUE;
+                    case 6 -> (startStation[row] = stationDictionary.code(in, start, end)) >= 0;
+                    case 7 -> (endStation[row] = stationDictionary.code(in, start, end)) >= 0;
+                    case 8 -> (duration[row] = parseInt()) != Integer.MIN_VALUE;
+                    default -> parsePrice(row);
+                };
+                if (!ok) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Advances over the next field; the last field of a row must end the line. */
+        private boolean nextField(boolean last) {
+            start = pos;
+            while (pos < limit) {
+                byte b = in.get(pos);
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                if (b == '"') {
+                    return false;
+                }
+                pos++;
+            }
+            end = pos;
+            if (end == start) {
+                return false;
+            }
+            if (last) {
+                if (pos < limit && in.get(pos) == ',') {
+                    return false;
+                }
+                skipLine();
+                return true;
+            }
+            if (pos >= limit || in.get(pos) != ',') {
+                return false;
+            }
+            pos++;
+            return true;
+        }
+
+        private int parseInt() {
+            return parseInt(start, end);
+        }
+
+        private int parseInt(int from, int to) {
+            boolean negative = in.get(from) == '-';
+            int i = negative ? from + 1 : from;
+            if (i == to || to - i > 9) {
+                return Integer.MIN_VALUE;
+            }
+            int value = 0;
+            for (; i < to; i++) {
+                int digit = in.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return Integer.MIN_VALUE;
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        // yyyy-MM-dd HH:mm:ss
+        private long parseTimestamp() {
+            if (end - start != 19 || in.get(start + 4) != '-' || in.get(start + 7) != '-'
+                    || in.get(start + 10) != ' ' || in.get(start + 13) != ':' || in.get(start + 16) != ':') {
+                return Long.MIN_VALUE;
+            }
+            int year = parseInt(start, start + 4);
+            int month = parseInt(start + 5, start + 7);
+            int day = parseInt(start + 8, start + 10);
+            int hour = parseInt(start + 11, start + 13);
+            int minute = parseInt(start + 14, start + 16);
+            int second = parseInt(start + 17, start + 19);
+            if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                    || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return Long.MIN_VALUE;
+            }
+            return epochSecond(year, month, day, hour, minute, second);
+        }
+
+        private static int daysInMonth(int year, int month) {
+            return switch (month) {
+                case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+                case 4, 6, 9, 11 -> 30;
+                default -> 31;
+            };
+        }
+
+        /**
+         * Parses digits[.digits] as an exact mantissa and scale. With at most
+         * two decimals, mantissa / 10^scale is one correctly rounded division,
+         * the same double {@code Double.parseDouble} returns.
+         */
+        private boolean parsePrice(int row) {
+            long mantissa = 0;
+            int scale = -1;
+            int digits = 0;
+            for (int i = start; i < end; i++) {
+                byte b = in.get(i);
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                    continue;
+                }
+                if (b < '0' || b > '9' || ++digits > 15) {
+                    return false;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            }
+            if (digits == 0 || scale > MAX_PRICE_DECIMALS) {
+                return false;
+            }
+            scale = Math.max(scale, 0);
+            price[row] = mantissa / (scale == 0 ? 1.0 : scale == 1 ? 10.0 : 100.0);
+            priceCents[row] = mantissa * (scale == 0 ? 100 : scale == 1 ? 10 : 1);
+            return true;
+        }
+
+        private boolean lineIsBlank() {
+            byte b = in.get(pos);
+            return b == '\n' || b == '\r';
+        }
+
+        private void skipLine() {
+            while (pos < limit && in.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        private void grow() {
+            int capacity = rentalId.length * 2;
+            rentalId = Arrays.copyOf(rentalId, capacity);
+            userId = Arrays.copyOf(userId, capacity);
+            age = Arrays.copyOf(age, capacity);
+            gender = Arrays.copyOf(gender, capacity);
+            startTime = Arrays.copyOf(startTime, capacity);
+            endTime = Arrays.copyOf(endTime, capacity);
+            startStation = Arrays.copyOf(startStation, capacity);
+            endStation = Arrays.copyOf(endStation, capacity);
+            duration = Arrays.copyOf(duration, capacity);
+            price = Arrays.copyOf(price, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+        }
+    }
+
+    /** Open-addressing dictionary from byte slices of the mapped file to dense codes. */
+    private static final class Dictionary {
+        private byte[][] keys = new byte[64][];
+        private int[] codes = new int[64];
+        private String[] values = new String[16];
+        private int count;
+
+        int code(MappedByteBuffer in, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + in.get(i);
+            }
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    return add(in, from, to, slot);
+                }
+                if (matches(key, in, from, to)) {
+                    return codes[slot];
+                }
+            }
+        }
+
+        private int add(MappedByteBuffer in, int from, int to, int slot) {
+            byte[] key = new byte[to - from];
+            in.get(from, key);
+            keys[slot] = key;
+            codes[slot] = count;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = new String(key, StandardCharsets.UTF_8);
+            int code = count++;
+            if (count * 2 > keys.length) {
+                rehash();
+            }
+            return code;
+        }
+
+        private void rehash() {
+            byte[][] oldKeys = keys;
+            int[] oldCodes = codes;
+            keys = new byte[oldKeys.length * 2][];
+            codes = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                byte[] key = oldKeys[i];
+                if (key == null) {
+                    continue;
+                }
+                int hash = 1;
+                for (byte b : key) {
+                    hash = 31 * hash + b;
+                }
+                int slot = hash & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                codes[slot] = oldCodes[i];
+            }
+        }
+
+        private static boolean matches(byte[] key, MappedByteBuffer in, int from, int to) {
+            if (key.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != in.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String[] values() {
+            return Arrays.copyOf(values, count);
+        }
+    }
+}
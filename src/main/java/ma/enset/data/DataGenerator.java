@@ -1,60 +1,285 @@
 package ma.enset.data;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Random;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Writes synthetic rental data in the layout described by {@link RentalSchema}.
+ * <p>
+ * Large datasets are split into shards written in parallel. Shard {@code i}
+ * always covers the same rental ids and draws from its own
+ * {@link SplittableRandom} derived from the seed, so a given
+ * (rows, shards, seed, stations) combination always produces the same files
+ * regardless of how many threads are used.
+ * <p>
+ * Usage: {@code DataGenerator [--rows N] [--shards N] [--seed N] [--stations N]
+ * [--start yyyy-MM-dd --days N] [--output PATH]}.
+ * With a single shard the output is one CSV file, otherwise a directory of
+ * {@code part-NNNNN.csv} files that Spark reads as one dataset.
+ * <p>
+ * Start times are spread over all of 2024 by default. {@code --start} and
+ * {@code --days} confine them to a date range instead, so successive files
+ * fed to the streaming job move forward in event time.
+ */
 public class DataGenerator {
-    private static final String[] STATIONS = {
-            "Station A", "Station B", "Station C", "Station D", "Station E"
-    };
+    private static final String HEADER = "rental_id,user_id,age,gender,start_time,end_time," +
+            "start_station,end_station,duration_minutes,price\n";
 
     private static final String[] GENDERS = {"M", "F"};
-    private static final Random random = new Random();
+    private static final int BUFFER_SIZE = 1 << 20;
 
     public static void main(String[] args) {
-        generateCSV("bike_sharing.csv", 1000);
-        System.out.println("Sample data generated: bike_sharing.csv");
+        long rows = 1000;
+        int shards = 1;
+        long seed = System.nanoTime();
+        int stations = 5;
+        String output = "bike_sharing.csv";
+        LocalDate start = null;
+        int days = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rows" -> rows = Long.parseLong(args[++i]);
+                case "--shards" -> shards = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--stations" -> stations = Integer.parseInt(args[++i]);
+                case "--start" -> start = LocalDate.parse(args[++i]);
+                case "--days" -> days = Integer.parseInt(args[++i]);
+                case "--output" -> output = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        try {
+            long begin = System.nanoTime();
+            generate(Path.of(output), rows, shards, seed, stations, start, days);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.println("Sample data generated: " + output);
+            System.out.printf("%d rows in %d shard(s), seed %d, %.2f s (%.0f rows/sec)%n",
+                    rows, shards, seed, seconds, rows / seconds);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     public static void generateCSV(String filename, int numRecords) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        try {
+            generate(Path.of(filename), numRecords, 1, System.nanoTime(), 5);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Generates {@code rows} rentals into {@code output}: a single file when
+     * {@code shards == 1}, otherwise a directory with one file per shard.
+     */
+    public static void generate(Path output, long rows, int shards, long seed, int stations) throws IOException {
+        generate(output, rows, shards, seed, stations, null, 1);
+    }
+
+    /**
+     * Same as {@link #generate(Path, long, int, long, int)}, with start times
+     * within {@code days} days from {@code start}, or anywhere in 2024 when
+     * {@code start} is {@code null}.
+     */
+    public static void generate(Path output, long rows, int shards, long seed, int stations,
+                                LocalDate start, int days) throws IOException {
+        if (shards < 1 || stations < 1 || rows < 0 || days < 1) {
+            throw new IllegalArgumentException("rows, shards, stations and days must be positive");
+        }
+        byte[][] stationNames = stationNames(stations);
+        // One extra day: a rental starting late on the last day ends on the next
+        LocalDate[] dates = start == null ? null : start.datesUntil(start.plusDays(days + 1)).toArray(LocalDate[]::new);
 
-        try (FileWriter writer = new FileWriter(filename)) {
-            // Write header
-            writer.write("rental_id,user_id,age,gender,start_time,end_time," +
-                    "start_station,end_station,duration_minutes,price\n");
+        // Split on the caller thread so every shard gets the same stream whatever the scheduling
+        SplittableRandom root = new SplittableRandom(seed);
+        List<SplittableRandom> randoms = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            randoms.add(root.split());
+        }
+
+        if (shards == 1) {
+            writeShard(output, 1, rows, randoms.get(0), stationNames, dates);
+            return;
+        }
+
+        Files.createDirectories(output);
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(shards, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++) {
+                long first = 1 + rows * i / shards;
+                long count = rows * (i + 1) / shards - rows * i / shards;
+                Path file = output.resolve(String.format("part-%05d.csv", i));
+                SplittableRandom random = randoms.get(i);
+                futures.add(pool.submit(() -> {
+                    writeShard(file, first, count, random, stationNames, dates);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Shard generation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-            for (int i = 1; i <= numRecords; i++) {
+    private static void writeShard(Path file, long firstId, long count, SplittableRandom random,
+                                   byte[][] stationNames, LocalDate[] dates) throws IOException {
+        try (RowWriter writer = new RowWriter(Files.newOutputStream(file))) {
+            writer.ascii(HEADER);
+
+            for (long id = firstId; id < firstId + count; id++) {
                 int userId = random.nextInt(500) + 1;
                 int age = random.nextInt(63) + 18; // 18-80
                 String gender = GENDERS[random.nextInt(2)];
 
-                // Random date in 2024
-                LocalDateTime startTime = LocalDateTime.of(2024,
-                        random.nextInt(12) + 1,
-                        random.nextInt(28) + 1,
-                        random.nextInt(24),
-                        random.nextInt(60));
+                // Random date in 2024, day 1-28 so the end time never leaves the month,
+                // or a day of the requested range
+                int dayIndex = dates == null ? 0 : random.nextInt(dates.length - 1);
+                int month = dates == null ? random.nextInt(12) + 1 : dates[dayIndex].getMonthValue();
+                int day = dates == null ? random.nextInt(28) + 1 : dates[dayIndex].getDayOfMonth();
+                int year = dates == null ? 2024 : dates[dayIndex].getYear();
+                int hour = random.nextInt(24);
+                int minute = random.nextInt(60);
 
                 int duration = random.nextInt(120) + 5; // 5-125 minutes
-                LocalDateTime endTime = startTime.plusMinutes(duration);
+                int endMinuteOfDay = hour * 60 + minute + duration;
+                LocalDate endDate = dates == null ? null : dates[dayIndex + endMinuteOfDay / 1440];
+                int endYear = dates == null ? year : endDate.getYear();
+                int endMonth = dates == null ? month : endDate.getMonthValue();
+                int endDay = dates == null ? day + endMinuteOfDay / 1440 : endDate.getDayOfMonth();
+                endMinuteOfDay %= 1440;
 
-                String startStation = STATIONS[random.nextInt(STATIONS.length)];
-                String endStation = STATIONS[random.nextInt(STATIONS.length)];
+                byte[] startStation = stationNames[random.nextInt(stationNames.length)];
+                byte[] endStation = stationNames[random.nextInt(stationNames.length)];
 
-                double price = Math.round((2.5 + duration * 0.1) * 100.0) / 100.0;
+                long priceCents = Math.round((2.5 + duration * 0.1) * 100.0);
 
-                writer.write(String.format("%d,%d,%d,%s,%s,%s,%s,%s,%d,%.2f\n",
-                        i, userId, age, gender,
-                        startTime.format(formatter),
-                        endTime.format(formatter),
-                        startStation, endStation, duration, price));
+                writer.number(id).comma()
+                        .number(userId).comma()
+                        .number(age).comma()
+                        .ascii(gender).comma()
+                        .timestamp(year, month, day, hour, minute).comma()
+                        .timestamp(endYear, endMonth, endDay, endMinuteOfDay / 60, endMinuteOfDay % 60).comma()
+                        .bytes(startStation).comma()
+                        .bytes(endStation).comma()
+                        .number(duration).comma()
+                        .number(priceCents / 100).dot().twoDigits((int) (priceCents % 100))
+                        .newline();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+    }
+
+    // Station A..Z as before, then numbered stations for larger networks
+    private static byte[][] stationNames(int stations) {
+        byte[][] names = new byte[stations][];
+        for (int i = 0; i < stations; i++) {
+            String name = stations <= 26 ? "Station " + (char) ('A' + i) : "Station " + (i + 1);
+            names[i] = name.getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /** Formats rows straight into a byte buffer, avoiding String.format and per-row objects. */
+    private static final class RowWriter implements AutoCloseable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final byte[] digits = new byte[20];
+        private int position;
+
+        RowWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        RowWriter ascii(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                put((byte) value.charAt(i));
+            }
+            return this;
+        }
+
+        RowWriter bytes(byte[] value) throws IOException {
+            for (byte b : value) {
+                put(b);
+            }
+            return this;
+        }
+
+        RowWriter number(long value) throws IOException {
+            int length = 0;
+            do {
+                digits[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            while (length > 0) {
+                put(digits[--length]);
+            }
+            return this;
+        }
+
+        RowWriter twoDigits(int value) throws IOException {
+            put((byte) ('0' + value / 10));
+            put((byte) ('0' + value % 10));
+            return this;
+        }
+
+        // yyyy-MM-dd HH:mm:ss, see RentalSchema.TIMESTAMP_PATTERN
+        RowWriter timestamp(int year, int month, int day, int hour, int minute) throws IOException {
+            number(year).put((byte) '-').twoDigits(month).put((byte) '-');
+            twoDigits(day).put((byte) ' ');
+            twoDigits(hour).put((byte) ':');
+            return twoDigits(minute).ascii(":00");
+        }
+
+        RowWriter comma() throws IOException {
+            return put((byte) ',');
+        }
+
+        RowWriter dot() throws IOException {
+            return put((byte) '.');
+        }
+
+        RowWriter newline() throws IOException {
+            return put((byte) '\n');
+        }
+
+        private RowWriter put(byte b) throws IOException {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = b;
+            return this;
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            out.close();
         }
     }
 }
@@ -0,0 +1,94 @@
+package ma.enset.data;
+
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import java.util.Map;
+
+import static org.apache.spark.sql.functions.col;
+import static org.apache.spark.sql.functions.lit;
+import static org.apache.spark.sql.functions.struct;
+import static org.apache.spark.sql.functions.to_csv;
+import static org.apache.spark.sql.functions.when;
+
+/**
+ * Single-pass CSV ingestion against {@link RentalSchema}.
+ * <p>
+ * The file is parsed once in PERMISSIVE mode and the parsed rows are cached;
+ * malformed lines are split off from that cache and written as raw text to a
+ * quarantine directory instead of failing the run or leaking nulls into the
+ * aggregates.
+ * <p>
+ * Every column is required. The CSV reader turns an empty field into null
+ * without flagging the row as corrupt, so rows with a null in any column are
+ * quarantined too, re-encoded as a CSV line since Spark keeps no raw text for
+ * them.
+ */
+public final class RentalLoader {
+
+    private RentalLoader() {
+    }
+
+    public static LoadResult load(SparkSession spark, String csvPath, String quarantinePath) {
+        Dataset<Row> parsed = parse(spark, csvPath).persist(StorageLevel.MEMORY_AND_DISK());
+
+        // This count is the only pass over the file, every later query reads the cache
+        Dataset<Row> malformed = parsed.filter(col(RentalSchema.CORRUPT_RECORD_COLUMN).isNotNull());
+        long malformedCount = malformed.count();
+        if (malformedCount > 0) {
+            malformed.select(RentalSchema.CORRUPT_RECORD_COLUMN)
+                    .write()
+                    .mode(SaveMode.Overwrite)
+                    .text(quarantinePath);
+        }
+
+        return new LoadResult(dropMalformed(parsed), malformedCount, quarantinePath);
+    }
+
+    /**
+     * Lazily reads the well-formed rows of {@code csvPaths} without caching,
+     * for callers that consume the data in a single query.
+     */
+    public static Dataset<Row> readValid(SparkSession spark, String... csvPaths) {
+        return dropMalformed(parse(spark, csvPaths));
+    }
+
+    private static Dataset<Row> parse(SparkSession spark, String... csvPaths) {
+        return flagIncomplete(spark.read()
+                .schema(RentalSchema.SCHEMA_WITH_CORRUPT_RECORD)
+                .option("header", "true")
+                .option("mode", "PERMISSIVE")
+                .option("columnNameOfCorruptRecord", RentalSchema.CORRUPT_RECORD_COLUMN)
+                .option("timestampFormat", RentalSchema.TIMESTAMP_PATTERN)
+                .csv(csvPaths));
+    }
+
+    // Fills the corrupt-record slot of well-formed rows that have an empty field
+    private static Dataset<Row> flagIncomplete(Dataset<Row> parsed) {
+        String[] names = RentalSchema.SCHEMA.fieldNames();
+        Column[] fields = new Column[names.length];
+        Column incomplete = lit(false);
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = col(names[i]);
+            incomplete = incomplete.or(fields[i].isNull());
+        }
+        Column corrupt = col(RentalSchema.CORRUPT_RECORD_COLUMN);
+        return parsed.withColumn(RentalSchema.CORRUPT_RECORD_COLUMN,
+                when(corrupt.isNull().and(incomplete),
+                        to_csv(struct(fields), Map.of("timestampFormat", RentalSchema.TIMESTAMP_PATTERN)))
+                        .otherwise(corrupt));
+    }
+
+    private static Dataset<Row> dropMalformed(Dataset<Row> parsed) {
+        return parsed
+                .filter(col(RentalSchema.CORRUPT_RECORD_COLUMN).isNull())
+                .drop(RentalSchema.CORRUPT_RECORD_COLUMN);
+    }
+
+    public record LoadResult(Dataset<Row> rentals, long malformedCount, String quarantinePath) {
+    }
+}
@@ -0,0 +1,33 @@
+package ma.enset.data;
+
+import org.apache.spark.sql.types.DataTypes;
+import org.apache.spark.sql.types.StructType;
+
+/**
+ * Declared layout of the rental CSV written by {@link DataGenerator}.
+ * Loading with this schema avoids the extra pass Spark makes over the file
+ * when {@code inferSchema} is enabled.
+ */
+public final class RentalSchema {
+    public static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    public static final String CORRUPT_RECORD_COLUMN = "_corrupt_record";
+
+    public static final StructType SCHEMA = new StructType()
+            .add("rental_id", DataTypes.IntegerType)
+            .add("user_id", DataTypes.IntegerType)
+            .add("age", DataTypes.IntegerType)
+            .add("gender", DataTypes.StringType)
+            .add("start_time", DataTypes.TimestampType)
+            .add("end_time", DataTypes.TimestampType)
+            .add("start_station", DataTypes.StringType)
+            .add("end_station", DataTypes.StringType)
+            .add("duration_minutes", DataTypes.IntegerType)
+            .add("price", DataTypes.DoubleType);
+
+    // Same columns plus the slot Spark fills with the raw line when a row cannot be parsed
+    public static final StructType SCHEMA_WITH_CORRUPT_RECORD = SCHEMA
+            .add(CORRUPT_RECORD_COLUMN, DataTypes.StringType);
+
+    private RentalSchema() {
+    }
+}
@@ -0,0 +1,27 @@
+package ma.enset.data;
+
+import org.apache.spark.sql.SparkSession;
+
+/**
+ * Local {@link SparkSession} settings shared by every entry point that reads
+ * the rentals.
+ * <p>
+ * Timestamps in the CSV carry no zone and are read as UTC wall-clock time, so
+ * {@code HOUR(start_time)} and day boundaries never shift with daylight saving
+ * and match the columnar engine, whichever zone the JVM runs in. Callers add
+ * their own settings to the returned builder.
+ */
+public final class RentalSession {
+    public static final String TIME_ZONE = "UTC";
+
+    private RentalSession() {
+    }
+
+    public static SparkSession.Builder builder(String appName) {
+        return SparkSession.builder()
+                .appName(appName)
+                .master("local[*]")
+                .config("spark.sql.shuffle.partitions", "4")
+                .config("spark.sql.session.timeZone", TIME_ZONE);
+    }
+}
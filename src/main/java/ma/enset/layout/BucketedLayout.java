@@ -0,0 +1,89 @@
+package ma.enset.layout;
+
+import ma.enset.report.PlanInspector;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.plans.physical.HashPartitioning;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.execution.exchange.ShuffleExchangeExec;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Rentals stored as a Parquet table bucketed and sorted on
+ * {@code start_station}.
+ * <p>
+ * Rows of one station always land in the same bucket file, so the scan
+ * already satisfies the distribution required by a GROUP BY on
+ * {@code start_station} (or on {@code start_station, end_station}) and Spark
+ * plans those aggregates without a shuffle.
+ */
+public class BucketedLayout {
+    public static final String TABLE = "bike_rentals_bucketed";
+    public static final int BUCKETS = 8;
+
+    /** Report queries grouped on {@code start_station} alone or with {@code end_station}. */
+    public static final List<String> STATION_QUERIES = List.of(
+            "exercise4.rentalsByStation",
+            "exercise4.avgDurationByStation",
+            "exercise4.topStation",
+            "exercise5.morningStation",
+            "bonus.profitableRoutes");
+
+    private final SparkSession spark;
+    private final Path location;
+
+    public BucketedLayout(SparkSession spark, Path warehouse) {
+        this.spark = spark;
+        this.location = warehouse.toAbsolutePath().resolve(TABLE);
+    }
+
+    public void save(Dataset<Row> rentals) {
+        rentals.write()
+                .mode(SaveMode.Overwrite)
+                .bucketBy(BUCKETS, "start_station")
+                .sortBy("start_station")
+                .option("path", location.toString())
+                .format("parquet")
+                .saveAsTable(TABLE);
+    }
+
+    public Dataset<Row> table() {
+        return spark.table(TABLE);
+    }
+
+    /** Hash exchanges in the physical plan of {@code query}, i.e. shuffles feeding a join or aggregate. */
+    public static long hashExchanges(SparkSession spark, ReportQuery query) {
+        SparkPlan plan = spark.sql(query.sql()).queryExecution().executedPlan();
+        return PlanInspector.nodes(plan).stream()
+                .filter(node -> node instanceof ShuffleExchangeExec exchange
+                        && exchange.outputPartitioning() instanceof HashPartitioning)
+                .count();
+    }
+
+    /**
+     * Prints, for every query of {@link #STATION_QUERIES}, whether its physical
+     * plan is free of hash exchanges, and returns the number of queries that
+     * still shuffle.
+     */
+    public int printExchangeCheck() {
+        int shuffling = 0;
+        System.out.println("Physical plan check on " + TABLE + " (" + BUCKETS + " buckets on start_station):");
+        for (String name : STATION_QUERIES) {
+            ReportQuery query = ReportQueries.byName(name)
+                    .orElseThrow(() -> new IllegalStateException("Unknown report query: " + name));
+            long exchanges = hashExchanges(spark, query);
+            if (exchanges > 0) {
+                shuffling++;
+            }
+            System.out.println("  " + (exchanges == 0 ? "✓ " : "✗ ") + query.name()
+                    + (exchanges == 0 ? ": no shuffle" : ": " + exchanges + " hash exchange(s)"));
+        }
+        return shuffling;
+    }
+}
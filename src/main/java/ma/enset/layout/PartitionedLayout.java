@@ -0,0 +1,185 @@
+package ma.enset.layout;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * Rentals stored as Parquet partitioned by {@code rental_date}, with rows
+ * sorted on {@code start_hour} inside each date.
+ * <p>
+ * A date range only lists the matching partition directories, and because
+ * hours are clustered the Parquet row-group statistics on {@code start_hour}
+ * let the reader skip row groups outside an hour range.
+ */
+public class PartitionedLayout {
+    public static final String TABLE = "bike_rentals_by_date";
+    private static final String PARTITION_PREFIX = "rental_date=";
+
+    private final SparkSession spark;
+    private final Path location;
+
+    public PartitionedLayout(SparkSession spark, Path warehouse) {
+        this.spark = spark;
+        this.location = warehouse.toAbsolutePath().resolve(TABLE);
+    }
+
+    /**
+     * Writes {@code rentals}, one file per date. Only the dates present in
+     * {@code rentals} are replaced, so daily loads can be appended.
+     */
+    public void save(Dataset<Row> rentals) {
+        rentals.withColumn("rental_date", to_date(col("start_time")))
+                .withColumn("start_hour", hour(col("start_time")))
+                .repartition(col("rental_date"))
+                // Leading with the partition column satisfies the writer's required ordering, so it adds no
+                // sort of its own that could undo the hour clustering the row-group pruning relies on
+                .sortWithinPartitions("rental_date", "start_hour", "start_time")
+                .write()
+                .mode(SaveMode.Overwrite)
+                .option("partitionOverwriteMode", "dynamic")
+                .partitionBy("rental_date")
+                .parquet(location.toString());
+    }
+
+    /**
+     * Rentals inside {@code window}, with the original rental columns only.
+     * The filters are on the partition and clustering columns so Spark can
+     * prune them at planning time.
+     */
+    public Dataset<Row> read(TimeWindow window) {
+        Dataset<Row> stored = spark.read().parquet(location.toString());
+        Column filter = lit(true);
+        if (window.from() != null) {
+            filter = filter.and(col("rental_date").geq(lit(window.from().toString()).cast("date")));
+        }
+        if (window.to() != null) {
+            filter = filter.and(col("rental_date").leq(lit(window.to().toString()).cast("date")));
+        }
+        if (!window.coversAllHours()) {
+            filter = filter.and(col("start_hour").between(window.fromHour(), window.toHour()));
+        }
+        return stored.filter(filter).drop("rental_date", "start_hour");
+    }
+
+    public Path location() {
+        return location;
+    }
+
+    /** Whether at least one date has been written. */
+    public boolean exists() {
+        return !partitions().isEmpty();
+    }
+
+    /** Most recent stored date, used to resolve "last N days" windows. */
+    public LocalDate latestDate() {
+        return partitions().stream().map(PartitionedLayout::dateOf).max(LocalDate::compareTo).orElse(LocalDate.now());
+    }
+
+    /**
+     * Files and row groups a read of {@code window} touches, computed from the
+     * partition directories and the Parquet footers the same way the reader
+     * prunes them.
+     */
+    public PruningReport pruning(TimeWindow window) {
+        Configuration conf = spark.sparkContext().hadoopConfiguration();
+        int filesTotal = 0;
+        int filesRead = 0;
+        long rowGroupsInFilesRead = 0;
+        long rowGroupsRead = 0;
+        for (Path partition : partitions()) {
+            List<Path> files = dataFiles(partition);
+            filesTotal += files.size();
+            if (!window.contains(dateOf(partition))) {
+                continue;
+            }
+            filesRead += files.size();
+            for (Path file : files) {
+                for (BlockMetaData block : footerBlocks(file, conf)) {
+                    rowGroupsInFilesRead++;
+                    if (window.coversAllHours() || overlaps(block, window)) {
+                        rowGroupsRead++;
+                    }
+                }
+            }
+        }
+        return new PruningReport(filesTotal, filesRead, rowGroupsInFilesRead, rowGroupsRead);
+    }
+
+    private static boolean overlaps(BlockMetaData block, TimeWindow window) {
+        for (ColumnChunkMetaData column : block.getColumns()) {
+            if (column.getPath().toDotString().equals("start_hour")) {
+                Statistics<?> stats = column.getStatistics();
+                if (stats == null || !stats.hasNonNullValue()) {
+                    return true;
+                }
+                return window.overlapsHours(((Number) stats.genericGetMin()).intValue(),
+                        ((Number) stats.genericGetMax()).intValue());
+            }
+        }
+        return true;
+    }
+
+    private static List<BlockMetaData> footerBlocks(Path file, Configuration conf) {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new org.apache.hadoop.fs.Path(file.toUri()), conf))) {
+            return reader.getFooter().getBlocks();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read footer of " + file, e);
+        }
+    }
+
+    private List<Path> partitions() {
+        if (!Files.isDirectory(location)) {
+            return List.of();
+        }
+        try (Stream<Path> entries = Files.list(location)) {
+            return entries.filter(p -> p.getFileName().toString().startsWith(PARTITION_PREFIX))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> dataFiles(Path partition) {
+        try (Stream<Path> entries = Files.list(partition)) {
+            return entries.filter(p -> p.getFileName().toString().endsWith(".parquet")).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static LocalDate dateOf(Path partition) {
+        return LocalDate.parse(partition.getFileName().toString().substring(PARTITION_PREFIX.length()));
+    }
+
+    public record PruningReport(int filesTotal, int filesRead, long rowGroupsInFilesRead, long rowGroupsRead) {
+
+        @Override
+        public String toString() {
+            return "Files read: " + filesRead + " of " + filesTotal
+                    + " (" + (filesTotal - filesRead) + " skipped by date); "
+                    + "row groups read: " + rowGroupsRead + " of " + rowGroupsInFilesRead
+                    + " (" + (rowGroupsInFilesRead - rowGroupsRead) + " skipped by hour statistics)";
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ma.enset.layout;
+
+import java.time.LocalDate;
+
+/**
+ * Date range and hour-of-day range a time-based analysis is restricted to.
+ * Both ranges are inclusive; {@code null} dates leave that side open.
+ */
+public record TimeWindow(LocalDate from, LocalDate to, int fromHour, int toHour) {
+    public TimeWindow {
+        if (fromHour < 0 || fromHour > toHour || toHour > 23) {
+            throw new IllegalArgumentException("Hour range must satisfy 0 <= from <= to <= 23: " + fromHour + "-" + toHour);
+        }
+    }
+
+    public boolean contains(LocalDate date) {
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    public boolean overlapsHours(int minHour, int maxHour) {
+        return maxHour >= fromHour && minHour <= toHour;
+    }
+
+    public boolean coversAllHours() {
+        return fromHour <= 0 && toHour >= 23;
+    }
+
+    @Override
+    public String toString() {
+        return (from == null ? "…" : from) + " → " + (to == null ? "…" : to)
+                + ", hours " + fromHour + "-" + toHour;
+    }
+}
@@ -0,0 +1,96 @@
+package ma.enset.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Writes collected {@link QueryMetrics} as a JSON report and as a Prometheus
+ * text-format file that a node exporter textfile collector can pick up.
+ */
+public final class MetricsExporter {
+
+    private MetricsExporter() {
+    }
+
+    public static void writeJson(List<QueryMetrics> queries, String application, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("  \"application\": " + quote(application) + ",\n");
+            out.write("  \"generatedAt\": " + quote(Instant.now().toString()) + ",\n");
+            out.write("  \"queries\": [");
+            for (int i = 0; i < queries.size(); i++) {
+                QueryMetrics q = queries.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("    {\"query\": " + quote(q.name())
+                        + ", \"wallTimeMs\": " + q.wallTimeMs()
+                        + ", \"jobs\": " + q.jobs()
+                        + ", \"stages\": " + q.stages()
+                        + ", \"tasks\": " + q.tasks()
+                        + ", \"executorRunTimeMs\": " + q.executorRunTimeMs()
+                        + ", \"inputBytes\": " + q.inputBytes()
+                        + ", \"inputRecords\": " + q.inputRecords()
+                        + ", \"shuffleReadBytes\": " + q.shuffleReadBytes()
+                        + ", \"shuffleWriteBytes\": " + q.shuffleWriteBytes()
+                        + ", \"memorySpillBytes\": " + q.memorySpillBytes()
+                        + ", \"diskSpillBytes\": " + q.diskSpillBytes()
+                        + ", \"gcTimeMs\": " + q.gcTimeMs() + "}");
+            }
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    public static void writePrometheus(List<QueryMetrics> queries, Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        // Write next to the target and rename, so a collector never reads a partial file
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            gauge(out, queries, "bike_query_wall_time_seconds", "Wall-clock time of the query.",
+                    q -> q.wallTimeMs() / 1000.0);
+            gauge(out, queries, "bike_query_jobs", "Spark jobs run by the query.", QueryMetrics::jobs);
+            gauge(out, queries, "bike_query_stages", "Spark stages completed by the query.", QueryMetrics::stages);
+            gauge(out, queries, "bike_query_tasks", "Tasks of the completed stages.", QueryMetrics::tasks);
+            gauge(out, queries, "bike_query_executor_run_time_seconds", "Summed task run time.",
+                    q -> q.executorRunTimeMs() / 1000.0);
+            gauge(out, queries, "bike_query_input_bytes", "Bytes read from input sources.",
+                    QueryMetrics::inputBytes);
+            gauge(out, queries, "bike_query_shuffle_read_bytes", "Shuffle bytes read.",
+                    QueryMetrics::shuffleReadBytes);
+            gauge(out, queries, "bike_query_shuffle_write_bytes", "Shuffle bytes written.",
+                    QueryMetrics::shuffleWriteBytes);
+            gauge(out, queries, "bike_query_memory_spill_bytes", "Bytes spilled from memory.",
+                    QueryMetrics::memorySpillBytes);
+            gauge(out, queries, "bike_query_disk_spill_bytes", "Bytes spilled to disk.",
+                    QueryMetrics::diskSpillBytes);
+            gauge(out, queries, "bike_query_gc_time_seconds", "JVM GC time during the query's tasks.",
+                    q -> q.gcTimeMs() / 1000.0);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void gauge(Writer out, List<QueryMetrics> queries, String metric, String help,
+                              ToDoubleFunction<QueryMetrics> value) throws IOException {
+        out.write("# HELP " + metric + " " + help + "\n");
+        out.write("# TYPE " + metric + " gauge\n");
+        for (QueryMetrics q : queries) {
+            out.write(metric + "{query=\"" + q.name().replace("\\", "\\\\").replace("\"", "\\\"") + "\"} "
+                    + format(value.applyAsDouble(q)) + "\n");
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,108 @@
+package ma.enset.metrics;
+
+/**
+ * Execution metrics accumulated for one tagged query. Stage metrics arrive on
+ * the listener bus thread while wall time is recorded by the caller, hence the
+ * synchronized accessors.
+ */
+public class QueryMetrics {
+    private final String name;
+    private long wallTimeMs;
+    private int jobs;
+    private int stages;
+    private int tasks;
+    private long executorRunTimeMs;
+    private long inputBytes;
+    private long inputRecords;
+    private long shuffleReadBytes;
+    private long shuffleWriteBytes;
+    private long memorySpillBytes;
+    private long diskSpillBytes;
+    private long gcTimeMs;
+
+    QueryMetrics(String name) {
+        this.name = name;
+    }
+
+    /** Metrics of a query answered outside Spark, where only the wall time is known. */
+    public static QueryMetrics wallTimeOnly(String name, long wallTimeMs) {
+        QueryMetrics metrics = new QueryMetrics(name);
+        metrics.addWallTime(wallTimeMs);
+        return metrics;
+    }
+
+    synchronized void addWallTime(long ms) {
+        wallTimeMs += ms;
+    }
+
+    synchronized void addJob() {
+        jobs++;
+    }
+
+    synchronized void addStage(int numTasks, long runTimeMs, long inBytes, long inRecords,
+                               long shuffleRead, long shuffleWrite, long memorySpill,
+                               long diskSpill, long gcMs) {
+        stages++;
+        tasks += numTasks;
+        executorRunTimeMs += runTimeMs;
+        inputBytes += inBytes;
+        inputRecords += inRecords;
+        shuffleReadBytes += shuffleRead;
+        shuffleWriteBytes += shuffleWrite;
+        memorySpillBytes += memorySpill;
+        diskSpillBytes += diskSpill;
+        gcTimeMs += gcMs;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public synchronized long wallTimeMs() {
+        return wallTimeMs;
+    }
+
+    public synchronized int jobs() {
+        return jobs;
+    }
+
+    public synchronized int stages() {
+        return stages;
+    }
+
+    public synchronized int tasks() {
+        return tasks;
+    }
+
+    public synchronized long executorRunTimeMs() {
+        return executorRunTimeMs;
+    }
+
+    public synchronized long inputBytes() {
+        return inputBytes;
+    }
+
+    public synchronized long inputRecords() {
+        return inputRecords;
+    }
+
+    public synchronized long shuffleReadBytes() {
+        return shuffleReadBytes;
+    }
+
+    public synchronized long shuffleWriteBytes() {
+        return shuffleWriteBytes;
+    }
+
+    public synchronized long memorySpillBytes() {
+        return memorySpillBytes;
+    }
+
+    public synchronized long diskSpillBytes() {
+        return diskSpillBytes;
+    }
+
+    public synchronized long gcTimeMs() {
+        return gcTimeMs;
+    }
+}
@@ -0,0 +1,121 @@
+package ma.enset.metrics;
+
+import org.apache.spark.executor.TaskMetrics;
+import org.apache.spark.scheduler.SparkListener;
+import org.apache.spark.scheduler.SparkListenerJobEnd;
+import org.apache.spark.scheduler.SparkListenerJobStart;
+import org.apache.spark.scheduler.SparkListenerStageCompleted;
+import org.apache.spark.scheduler.StageInfo;
+import org.apache.spark.sql.SparkSession;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Collects per-query execution metrics from Spark listener events.
+ * <p>
+ * {@link #record} runs a block with a query tag set as a thread-local Spark
+ * property. Every job started inside the block carries the tag, and the
+ * metrics of its completed stages are added to that query.
+ */
+public class QueryMetricsListener extends SparkListener {
+    static final String TAG_PROPERTY = "ma.enset.query.tag";
+
+    private final SparkSession spark;
+    private final Map<String, QueryMetrics> queries = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Map<Integer, QueryMetrics> stageQueries = new ConcurrentHashMap<>();
+    private final Map<Integer, List<Object>> jobStages = new ConcurrentHashMap<>();
+
+    private QueryMetricsListener(SparkSession spark) {
+        this.spark = spark;
+    }
+
+    public static QueryMetricsListener register(SparkSession spark) {
+        QueryMetricsListener listener = new QueryMetricsListener(spark);
+        spark.sparkContext().addSparkListener(listener);
+        return listener;
+    }
+
+    public void record(String tag, Runnable block) {
+        record(tag, () -> {
+            block.run();
+            return null;
+        });
+    }
+
+    public <T> T record(String tag, Supplier<T> block) {
+        QueryMetrics metrics = queries.computeIfAbsent(tag, QueryMetrics::new);
+        String previous = spark.sparkContext().getLocalProperty(TAG_PROPERTY);
+        spark.sparkContext().setLocalProperty(TAG_PROPERTY, tag);
+        long start = System.nanoTime();
+        try {
+            return block.get();
+        } finally {
+            metrics.addWallTime((System.nanoTime() - start) / 1_000_000);
+            spark.sparkContext().setLocalProperty(TAG_PROPERTY, previous);
+        }
+    }
+
+    @Override
+    public void onJobStart(SparkListenerJobStart jobStart) {
+        String tag = jobStart.properties() == null ? null : jobStart.properties().getProperty(TAG_PROPERTY);
+        QueryMetrics metrics = tag == null ? null : queries.get(tag);
+        if (metrics == null) {
+            return;
+        }
+        metrics.addJob();
+        List<Object> stageIds = CollectionConverters.asJava(jobStart.stageIds());
+        jobStages.put(jobStart.jobId(), stageIds);
+        for (Object stageId : stageIds) {
+            stageQueries.put((Integer) stageId, metrics);
+        }
+    }
+
+    @Override
+    public void onJobEnd(SparkListenerJobEnd jobEnd) {
+        // Stages skipped thanks to reused shuffle output never complete, forget them here
+        List<Object> stageIds = jobStages.remove(jobEnd.jobId());
+        if (stageIds != null) {
+            stageIds.forEach(stageQueries::remove);
+        }
+    }
+
+    @Override
+    public void onStageCompleted(SparkListenerStageCompleted stageCompleted) {
+        StageInfo stage = stageCompleted.stageInfo();
+        QueryMetrics metrics = stageQueries.remove(stage.stageId());
+        TaskMetrics task = stage.taskMetrics();
+        if (metrics == null || task == null) {
+            return;
+        }
+        metrics.addStage(stage.numTasks(),
+                task.executorRunTime(),
+                task.inputMetrics().bytesRead(),
+                task.inputMetrics().recordsRead(),
+                task.shuffleReadMetrics().totalBytesRead(),
+                task.shuffleWriteMetrics().bytesWritten(),
+                task.memoryBytesSpilled(),
+                task.diskBytesSpilled(),
+                task.jvmGCTime());
+    }
+
+    /** Metrics of every tagged query, in the order the queries first ran. */
+    public List<QueryMetrics> queries() {
+        // Stage events are delivered asynchronously, drain them before reading
+        try {
+            spark.sparkContext().listenerBus().waitUntilEmpty();
+        } catch (TimeoutException e) {
+            System.err.println("Query metrics may be incomplete: " + e.getMessage());
+        }
+        synchronized (queries) {
+            return new ArrayList<>(queries.values());
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package ma.enset.report;
+
+import ma.enset.data.DataGenerator;
+import ma.enset.data.RentalLoader;
+import ma.enset.data.RentalSession;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.execution.FileSourceScanExec;
+import org.apache.spark.sql.execution.InputAdapter;
+import org.apache.spark.sql.execution.LeafExecNode;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.execution.WholeStageCodegenExec;
+import org.apache.spark.sql.execution.exchange.Exchange;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Guards the physical plans of the report queries against regressions.
+ * <p>
+ * Every named query in {@link ReportQueries}, plus the {@link RentalCube}
+ * build, is planned against an uncached CSV scan of generated data with
+ * adaptive execution off, so the plan is the one Spark would start from. The
+ * cube form of every aggregate query, which is what {@link ReportEngine}
+ * actually runs, is then planned over the cached cube under
+ * {@code <name>.cube}. Four properties of each plan are compared with a
+ * committed baseline:
+ * <ul>
+ *   <li>{@code exchanges}: shuffle and broadcast exchanges, may not grow;</li>
+ *   <li>{@code pushedFilters}: filters pushed into the file scans, may not shrink;</li>
+ *   <li>{@code scanColumns}: columns read by the file scans, may not grow;</li>
+ *   <li>{@code codegenCoverage}: percentage of the computing operators
+ *       (exchanges and scans excluded) running inside whole-stage codegen,
+ *       may not shrink.</li>
+ * </ul>
+ * The optimized and physical plans are written under {@code target/plan-snapshots/}
+ * (expression ids stripped) so a failure can be diffed against the previous run.
+ * The baseline is only ever written by this class from measured plans; without
+ * one, the check fails and asks for it to be recorded.
+ * <p>
+ * Usage: {@code PlanGuard [--baseline PATH] [--update [--accept-regressions]]};
+ * exits with status 1 when a query got worse ({@code mvn -Pplan-guard verify}).
+ * {@code --update} rewrites the baseline from the current plans, but only
+ * records improvements and new queries. A plan that is worse than the
+ * committed baseline is refused unless {@code --accept-regressions} is also
+ * given, so an update never quietly absorbs a regression.
+ */
+public final class PlanGuard {
+    static final String CUBE_QUERY = "report.rentalCube";
+    static final String CUBE_SUFFIX = ".cube";
+
+    private static final Path DATA = Path.of("target", "plan-guard", "rentals.csv");
+    private static final Path SNAPSHOTS = Path.of("target", "plan-snapshots");
+
+    private PlanGuard() {
+    }
+
+    /** Structural properties of one query plan. */
+    public record PlanShape(long exchanges, long pushedFilters, long scanColumns, long codegenCoverage) {
+
+        /** Descriptions of every property of this plan that is worse than in {@code baseline}. */
+        List<String> regressionsFrom(PlanShape baseline) {
+            List<String> worse = new ArrayList<>();
+            if (exchanges > baseline.exchanges) {
+                worse.add("exchanges " + baseline.exchanges + " -> " + exchanges);
+            }
+            if (pushedFilters < baseline.pushedFilters) {
+                worse.add("pushedFilters " + baseline.pushedFilters + " -> " + pushedFilters);
+            }
+            if (scanColumns > baseline.scanColumns) {
+                worse.add("scanColumns " + baseline.scanColumns + " -> " + scanColumns);
+            }
+            if (codegenCoverage < baseline.codegenCoverage) {
+                worse.add("codegenCoverage " + baseline.codegenCoverage + "% -> " + codegenCoverage + "%");
+            }
+            return worse;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path baselinePath = Path.of("plans", "baseline.properties");
+        boolean update = false;
+        boolean acceptRegressions = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--baseline" -> baselinePath = Path.of(args[++i]);
+                case "--update" -> update = true;
+                case "--accept-regressions" -> acceptRegressions = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SparkSession spark = RentalSession.builder("Plan Guard")
+                .config("spark.sql.adaptive.enabled", "false")
+                .getOrCreate();
+        spark.sparkContext().setLogLevel("WARN");
+
+        Map<String, PlanShape> shapes;
+        try {
+            Files.createDirectories(DATA.getParent());
+            DataGenerator.generate(DATA, 1000, 1, 42, 5);
+            RentalLoader.readValid(spark, DATA.toAbsolutePath().toString()).createOrReplaceTempView("bike_rentals_view");
+            shapes = capture(spark);
+        } finally {
+            spark.stop();
+        }
+
+        if (!update && !Files.exists(baselinePath)) {
+            System.err.println("No plan baseline at " + baselinePath.toAbsolutePath() + ": record one with "
+                    + "mvn -Pplan-guard verify -Dplan.args=--update and commit it");
+            System.exit(1);
+        }
+        Map<String, PlanShape> baseline = Files.exists(baselinePath) ? readBaseline(baselinePath) : Map.of();
+        List<String> failures = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, PlanShape> entry : shapes.entrySet()) {
+            String name = entry.getKey();
+            PlanShape expected = baseline.get(name);
+            if (expected == null) {
+                missing.add(name);
+                continue;
+            }
+            List<String> worse = entry.getValue().regressionsFrom(expected);
+            if (!worse.isEmpty()) {
+                failures.add(name + ": " + String.join(", ", worse));
+            } else if (!entry.getValue().equals(expected)) {
+                System.out.println("  improved " + name + ": " + entry.getValue() + ", run with --update to keep it");
+            }
+        }
+
+        if (update) {
+            if (!failures.isEmpty() && !acceptRegressions) {
+                failures.forEach(f -> System.err.println("PLAN REGRESSION " + f));
+                System.err.println("Baseline not updated: add --accept-regressions if these plans are intended");
+                System.exit(1);
+            }
+            writeBaseline(baselinePath, shapes);
+            System.out.println("Plan baseline updated: " + baselinePath.toAbsolutePath());
+            return;
+        }
+
+        missing.forEach(name -> failures.add(name + ": no baseline, run with --update"));
+        if (failures.isEmpty()) {
+            System.out.println("Plans of " + shapes.size() + " queries match the baseline");
+            return;
+        }
+        failures.forEach(f -> System.err.println("PLAN REGRESSION " + f));
+        System.err.println("Plans written to: " + SNAPSHOTS.toAbsolutePath());
+        System.exit(1);
+    }
+
+    /**
+     * Plans every report query, the cube build and the cube form of every
+     * aggregate query, snapshotting the plans as it goes.
+     */
+    static Map<String, PlanShape> capture(SparkSession spark) throws IOException {
+        Files.createDirectories(SNAPSHOTS);
+        Map<String, PlanShape> shapes = new LinkedHashMap<>();
+        for (ReportQuery query : ReportQueries.all()) {
+            shapes.put(query.name(), shape(query.name(), spark.sql(query.sql())));
+        }
+        // Planned before the cube is cached, otherwise the plan is just a scan of the cache
+        shapes.put(CUBE_QUERY, shape(CUBE_QUERY, spark.sql(RentalCube.sql("bike_rentals_view"))));
+
+        ReportEngine engine = new ReportEngine(spark);
+        engine.prepare();
+        for (ReportQuery query : ReportQueries.all()) {
+            if (query.isAggregate()) {
+                shapes.put(query.name() + CUBE_SUFFIX, shape(query.name() + CUBE_SUFFIX, engine.result(query)));
+            }
+        }
+        return shapes;
+    }
+
+    private static PlanShape shape(String name, Dataset<Row> query) throws IOException {
+        QueryExecution execution = query.queryExecution();
+        SparkPlan plan = execution.executedPlan();
+        Files.writeString(SNAPSHOTS.resolve(name + ".txt"),
+                "== Optimized Logical Plan ==\n" + stripIds(execution.optimizedPlan().toString())
+                        + "\n== Physical Plan ==\n" + stripIds(plan.toString()));
+
+        long exchanges = 0;
+        long pushedFilters = 0;
+        long scanColumns = 0;
+        for (SparkPlan node : PlanInspector.nodes(plan)) {
+            if (node instanceof Exchange) {
+                exchanges++;
+            } else if (node instanceof FileSourceScanExec scan) {
+                pushedFilters += countListItems(CollectionConverters.asJava(scan.metadata()).get("PushedFilters"));
+                scanColumns += scan.requiredSchema().fields().length;
+            }
+        }
+        long[] operators = new long[2];
+        countOperators(plan, false, operators);
+        long coverage = operators[0] == 0 ? 100 : operators[1] * 100 / operators[0];
+        return new PlanShape(exchanges, pushedFilters, scanColumns, coverage);
+    }
+
+    // operators[0]: computing operators, operators[1]: those inside a whole-stage codegen stage
+    private static void countOperators(SparkPlan plan, boolean inStage, long[] operators) {
+        plan = PlanInspector.unwrap(plan);
+        if (plan instanceof WholeStageCodegenExec stage) {
+            countOperators(stage.child(), true, operators);
+            return;
+        }
+        if (plan instanceof InputAdapter adapter) {
+            countOperators(adapter.child(), false, operators);
+            return;
+        }
+        if (!(plan instanceof Exchange) && !(plan instanceof LeafExecNode)) {
+            operators[0]++;
+            if (inStage) {
+                operators[1]++;
+            }
+        }
+        for (SparkPlan child : PlanInspector.children(plan)) {
+            countOperators(child, inStage, operators);
+        }
+    }
+
+    // "[IsNull(a), GreaterThan(b,30)]" has two items: count the commas outside parentheses
+    static long countListItems(String list) {
+        if (list == null || list.isBlank() || list.equals("[]")) {
+            return 0;
+        }
+        long items = 1;
+        int depth = 0;
+        for (char c : list.toCharArray()) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items++;
+            }
+        }
+        return items;
+    }
+
+    private static String stripIds(String plan) {
+        return plan.replaceAll("#\\d+L?", "");
+    }
+
+    static Map<String, PlanShape> readBaseline(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        Map<String, PlanShape> baseline = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.endsWith(".exchanges")) {
+                continue;
+            }
+            String name = key.substring(0, key.length() - ".exchanges".length());
+            baseline.put(name, new PlanShape(
+                    Long.parseLong(properties.getProperty(name + ".exchanges")),
+                    Long.parseLong(properties.getProperty(name + ".pushedFilters")),
+                    Long.parseLong(properties.getProperty(name + ".scanColumns")),
+                    Long.parseLong(properties.getProperty(name + ".codegenCoverage"))));
+        }
+        return baseline;
+    }
+
+    // Written by hand rather than with Properties.store to keep query order and no timestamp
+    static void writeBaseline(Path path, Map<String, PlanShape> shapes) throws IOException {
+        StringBuilder out = new StringBuilder()
+                .append("# Physical-plan baseline checked by ma.enset.report.PlanGuard.\n")
+                .append("# exchanges and scanColumns may not grow, pushedFilters and codegenCoverage (%) may not shrink.\n")
+                .append("# Tighten with: mvn -Pplan-guard verify -Dplan.args=--update (regressions need --accept-regressions)\n");
+        shapes.forEach((name, shape) -> out.append('\n')
+                .append(name).append(".exchanges=").append(shape.exchanges()).append('\n')
+                .append(name).append(".pushedFilters=").append(shape.pushedFilters()).append('\n')
+                .append(name).append(".scanColumns=").append(shape.scanColumns()).append('\n')
+                .append(name).append(".codegenCoverage=").append(shape.codegenCoverage()).append('\n'));
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.writeString(path, out);
+    }
+}
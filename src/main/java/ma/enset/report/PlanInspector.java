@@ -0,0 +1,71 @@
+package ma.enset.report;
+
+import org.apache.spark.sql.execution.DataSourceScanExec;
+import org.apache.spark.sql.execution.SparkPlan;
+import org.apache.spark.sql.execution.adaptive.AdaptiveSparkPlanExec;
+import org.apache.spark.sql.execution.adaptive.QueryStageExec;
+import org.apache.spark.sql.execution.columnar.InMemoryTableScanExec;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Helpers for walking physical plans from Java, looking through the adaptive
+ * execution and query stage wrappers that hide the real operators.
+ */
+public final class PlanInspector {
+
+    private PlanInspector() {
+    }
+
+    /**
+     * Flattens {@code plan} into its operators, parents before children.
+     * Cached relations are not entered: their scan is a single leaf.
+     */
+    public static List<SparkPlan> nodes(SparkPlan plan) {
+        List<SparkPlan> out = new ArrayList<>();
+        collect(unwrap(plan), out);
+        return out;
+    }
+
+    private static void collect(SparkPlan plan, List<SparkPlan> out) {
+        out.add(plan);
+        for (SparkPlan child : children(plan)) {
+            collect(unwrap(child), out);
+        }
+    }
+
+    public static SparkPlan unwrap(SparkPlan plan) {
+        if (plan instanceof AdaptiveSparkPlanExec adaptive) {
+            return unwrap(adaptive.executedPlan());
+        }
+        if (plan instanceof QueryStageExec stage) {
+            return unwrap(stage.plan());
+        }
+        return plan;
+    }
+
+    public static List<SparkPlan> children(SparkPlan plan) {
+        return CollectionConverters.asJava(plan.children());
+    }
+
+    /**
+     * Counts the file scans {@code plan} actually performed. A cached relation
+     * reads its source only the first time it is used, so its plan is counted
+     * once and then remembered in {@code materializedCaches}.
+     */
+    static long countFileScans(SparkPlan plan, Set<Object> materializedCaches) {
+        long scans = 0;
+        for (SparkPlan node : nodes(plan)) {
+            if (node instanceof DataSourceScanExec) {
+                scans++;
+            } else if (node instanceof InMemoryTableScanExec cached
+                    && materializedCaches.add(cached.relation().cacheBuilder())) {
+                scans += countFileScans(cached.relation().cachedPlan(), materializedCaches);
+            }
+        }
+        return scans;
+    }
+}
@@ -0,0 +1,94 @@
+package ma.enset.report;
+
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+/**
+ * Grouping-sets aggregate of {@code bike_rentals_view} that every aggregate
+ * report query can be answered from.
+ * <p>
+ * One scan of the rentals produces one row per group of each grouping set,
+ * tagged with the set name in {@code grouping_set}. Measures are kept additive
+ * (counts and sums) so that averages and coarser groupings can be rebuilt by
+ * summing rows of the cube.
+ */
+public final class RentalCube {
+    public static final String VIEW_NAME = "rental_cube_view";
+
+    static final String AGE_GROUP =
+            "CASE " +
+                    "  WHEN age BETWEEN 18 AND 30 THEN '18-30' " +
+                    "  WHEN age BETWEEN 31 AND 40 THEN '31-40' " +
+                    "  WHEN age BETWEEN 41 AND 50 THEN '41-50' " +
+                    "  WHEN age >= 51 THEN '51+' " +
+                    "  ELSE 'Unknown' " +
+                    "END";
+
+    static final String DURATION_CATEGORY =
+            "CASE " +
+                    "  WHEN duration_minutes <= 15 THEN 'Short (0-15 min)' " +
+                    "  WHEN duration_minutes <= 30 THEN 'Medium (16-30 min)' " +
+                    "  WHEN duration_minutes <= 60 THEN 'Long (31-60 min)' " +
+                    "  ELSE 'Very Long (60+ min)' " +
+                    "END";
+
+    // GROUPING_ID() bits follow the order in which columns first appear in the
+    // grouping sets (start_station, end_station, hour, gender, age_group,
+    // duration_category), a set bit means the column is rolled up
+    private static final String GROUPING_SET =
+            "CASE GROUPING_ID() " +
+                    "  WHEN 23 THEN 'station_hour' " +
+                    "  WHEN 15 THEN 'route' " +
+                    "  WHEN 59 THEN 'gender' " +
+                    "  WHEN 61 THEN 'age_group' " +
+                    "  WHEN 62 THEN 'duration_category' " +
+                    "END";
+
+    /**
+     * Builds the cube from {@code source}, a view or table with the rental
+     * columns. Price is summed as a decimal so revenue stays exact however the
+     * groups are later re-combined.
+     */
+    public static String sql(String source) {
+        return "SELECT " + GROUPING_SET + " as grouping_set, " +
+                "       start_station, end_station, hour, gender, age_group, duration_category, " +
+                "       COUNT(*) as rental_count, " +
+                "       SUM(CAST(price AS DECIMAL(20, 2))) as revenue, " +
+                "       COUNT(price) as price_count, " +
+                "       SUM(CAST(duration_minutes AS BIGINT)) as duration_sum, " +
+                "       COUNT(duration_minutes) as duration_count, " +
+                "       SUM(CAST(age AS BIGINT)) as age_sum, " +
+                "       COUNT(age) as age_count " +
+                "FROM ( " +
+                "  SELECT start_station, end_station, HOUR(start_time) as hour, gender, " +
+                "         " + AGE_GROUP + " as age_group, " +
+                "         " + DURATION_CATEGORY + " as duration_category, " +
+                "         price, duration_minutes, age " +
+                "  FROM " + source +
+                ") " +
+                "GROUP BY GROUPING SETS ( " +
+                "  (start_station, end_station), " +
+                "  (start_station, hour), " +
+                "  (gender), " +
+                "  (age_group), " +
+                "  (duration_category) " +
+                ")";
+    }
+
+    private RentalCube() {
+    }
+
+    /**
+     * Computes the cube in a single pass over {@code bike_rentals_view}, caches
+     * it and registers it as {@link #VIEW_NAME}.
+     */
+    public static Dataset<Row> build(SparkSession spark) {
+        Dataset<Row> cube = spark.sql(sql("bike_rentals_view"))
+                .persist(StorageLevel.MEMORY_AND_DISK());
+        cube.count();
+        cube.createOrReplaceTempView(VIEW_NAME);
+        return cube;
+    }
+}
@@ -0,0 +1,241 @@
+package ma.enset.report;
+
+import ma.enset.metrics.QueryMetricsListener;
+import ma.enset.rollup.RollupStore;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs the exercise report with the aggregate queries fused into one scan.
+ * <p>
+ * {@link #prepare()} builds the {@link RentalCube} once, or loads it from a
+ * {@link RollupStore}; aggregate queries are then answered from the cube and
+ * only the row-level queries (filters, samples) go back to
+ * {@code bike_rentals_view}. With {@link #withLazyRentals} that view is only
+ * registered when the first such query runs.
+ * <p>
+ * The queries are independent: {@link #runConcurrent} submits them together
+ * from a bounded thread pool, in the {@value #SCHEDULER_POOL} FAIR scheduler
+ * pool, and still prints the results in list order.
+ */
+public class ReportEngine {
+    /** Pool declared in {@code fairscheduler.xml}, used when the session runs with {@code spark.scheduler.mode=FAIR}. */
+    public static final String SCHEDULER_POOL = "report";
+
+    private final SparkSession spark;
+    private final QueryMetricsListener metrics;
+    private RollupStore rollup;
+    private Runnable rentalsLoader;
+    private boolean prepared;
+    private boolean cubeAvailable = true;
+
+    public ReportEngine(SparkSession spark) {
+        this(spark, null);
+    }
+
+    /** When {@code metrics} is given, the cube build and every query are recorded under their name. */
+    public ReportEngine(SparkSession spark, QueryMetricsListener metrics) {
+        this.spark = spark;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Answers the aggregate queries from a persisted rollup instead of
+     * computing the cube from {@code bike_rentals_view} on every run.
+     */
+    public ReportEngine withRollup(RollupStore rollup) {
+        this.rollup = rollup;
+        return this;
+    }
+
+    /**
+     * Defers registering {@code bike_rentals_view} to {@code loader}, called
+     * once, the first time a query needs the raw rentals: a row-level query,
+     * the cube build, or an aggregate when the rollup is unavailable.
+     */
+    public ReportEngine withLazyRentals(Runnable loader) {
+        this.rentalsLoader = loader;
+        return this;
+    }
+
+    /**
+     * Runs every query against {@code bike_rentals_view} directly, for layouts
+     * such as a bucketed table where the raw aggregates need no shuffle.
+     */
+    public ReportEngine withoutCube() {
+        this.cubeAvailable = false;
+        this.prepared = true;
+        return this;
+    }
+
+    public void prepare() {
+        if (!prepared) {
+            if (rollup != null) {
+                try {
+                    record("report.rollupRefresh", rollup::refresh);
+                } catch (Exception e) {
+                    // AnalysisException (missing version, schema mismatch) and SparkException (corrupt file) are checked
+                    System.err.println("Rollup unavailable, aggregates fall back to raw scans: " + e.getMessage());
+                    cubeAvailable = false;
+                }
+            } else {
+                ensureRentals();
+                record("report.rentalCube", () -> RentalCube.build(spark));
+            }
+            prepared = true;
+        }
+    }
+
+    public Dataset<Row> result(ReportQuery query) {
+        if (query.isAggregate()) {
+            prepare();
+            if (cubeAvailable) {
+                return spark.sql(query.cubeSql());
+            }
+        }
+        ensureRentals();
+        return spark.sql(query.sql());
+    }
+
+    /** Number of rentals, summed from the cube when it is available. */
+    public long totalRentals() {
+        prepare();
+        if (cubeAvailable) {
+            Row total = spark.sql("SELECT SUM(rental_count) FROM " + RentalCube.VIEW_NAME
+                    + " WHERE grouping_set = 'gender'").first();
+            return total.isNullAt(0) ? 0 : total.getLong(0);
+        }
+        ensureRentals();
+        return spark.table("bike_rentals_view").count();
+    }
+
+    // Concurrent queries may all need the view first: only one of them loads it
+    private synchronized void ensureRentals() {
+        if (rentalsLoader != null) {
+            rentalsLoader.run();
+            rentalsLoader = null;
+        }
+    }
+
+    /**
+     * Prints {@code queries} with their section headers, in list order.
+     * Returns the wall time in ms, not counting the cube build.
+     */
+    public long run(List<ReportQuery> queries) {
+        if (queries.stream().anyMatch(ReportQuery::isAggregate)) {
+            prepare();
+        }
+        long start = System.nanoTime();
+        String section = null;
+        for (ReportQuery query : queries) {
+            section = printHeader(query, section);
+            record(query.name(), () -> print(query, result(query)));
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Runs {@code queries} on up to {@code parallelism} threads and prints
+     * each result as soon as it and every query before it are rendered, so
+     * the output reads the same as {@link #run}. Returns the wall time in ms,
+     * not counting the cube build.
+     */
+    public long runConcurrent(List<ReportQuery> queries, int parallelism) {
+        if (queries.stream().anyMatch(ReportQuery::isAggregate)) {
+            prepare();
+        }
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, queries.size())));
+        try {
+            List<Future<String>> rendered = new ArrayList<>(queries.size());
+            for (ReportQuery query : queries) {
+                rendered.add(pool.submit(() -> inSchedulerPool(
+                        () -> record(query.name(), () -> render(query, result(query))))));
+            }
+            String section = null;
+            for (int i = 0; i < queries.size(); i++) {
+                section = printHeader(queries.get(i), section);
+                System.out.print(rendered.get(i).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Report interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Report query failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    /**
+     * Renders {@code queries} one after another without printing them, the
+     * sequential baseline {@link #runConcurrent} is compared with. Returns
+     * the wall time in ms, not counting the cube build.
+     */
+    public long timeSequential(List<ReportQuery> queries) {
+        if (queries.stream().anyMatch(ReportQuery::isAggregate)) {
+            prepare();
+        }
+        long start = System.nanoTime();
+        for (ReportQuery query : queries) {
+            render(query, result(query));
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static String printHeader(ReportQuery query, String section) {
+        if (!query.section().equals(section)) {
+            System.out.println("\n--- " + query.section() + " ---\n");
+        }
+        System.out.println(query.heading());
+        return query.section();
+    }
+
+    // The pool is a thread-local property, so it only applies to jobs submitted by this worker
+    private <T> T inSchedulerPool(Supplier<T> block) {
+        spark.sparkContext().setLocalProperty("spark.scheduler.pool", SCHEDULER_POOL);
+        try {
+            return block.get();
+        } finally {
+            spark.sparkContext().setLocalProperty("spark.scheduler.pool", null);
+        }
+    }
+
+    private void record(String tag, Runnable block) {
+        record(tag, () -> {
+            block.run();
+            return null;
+        });
+    }
+
+    private <T> T record(String tag, Supplier<T> block) {
+        if (metrics != null) {
+            return metrics.record(tag, block);
+        }
+        return block.get();
+    }
+
+    public static void print(ReportQuery query, Dataset<Row> result) {
+        System.out.print(render(query, result));
+    }
+
+    /** The text {@link #print} writes: the {@code show()} table, then the row count when the query asks for it. */
+    public static String render(ReportQuery query, Dataset<Row> result) {
+        // showString is what show() prints; it is package-private in Scala but public in bytecode
+        StringBuilder out = new StringBuilder(result.showString(query.rows(), 0, false)).append('\n');
+        if (query.printTotal()) {
+            out.append("Total: ").append(result.count()).append(" rentals\n\n");
+        }
+        return out.toString();
+    }
+}
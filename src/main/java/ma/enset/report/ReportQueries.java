@@ -0,0 +1,236 @@
+package ma.enset.report;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Catalog of the exercise queries, in the order the report prints them.
+ * <p>
+ * Every aggregate query carries a second form that reads the grouping-sets
+ * cube built by {@link RentalCube}; both forms return the same columns.
+ */
+public final class ReportQueries {
+    public static final String EXERCISE_3 = "EXERCISE 3: Basic SQL Queries";
+    public static final String EXERCISE_4 = "EXERCISE 4: Aggregation Queries";
+    public static final String EXERCISE_5 = "EXERCISE 5: Time-Based Analysis";
+    public static final String EXERCISE_6 = "EXERCISE 6: User Behavior Analysis";
+    public static final String BONUS = "BONUS: Additional Insights";
+
+    private static final List<ReportQuery> QUERIES = List.of(
+            // ===== Exercise 3 =====
+            new ReportQuery("exercise3.longRentals", EXERCISE_3,
+                    "1. Rentals longer than 30 minutes:",
+                    "SELECT rental_id, user_id, start_station, end_station, duration_minutes " +
+                            "FROM bike_rentals_view " +
+                            "WHERE duration_minutes > 30 " +
+                            "ORDER BY duration_minutes DESC",
+                    null, 10, true),
+            new ReportQuery("exercise3.stationARentals", EXERCISE_3,
+                    "\n2. Rentals starting at 'Station A':",
+                    "SELECT rental_id, user_id, start_time, end_station, duration_minutes " +
+                            "FROM bike_rentals_view " +
+                            "WHERE start_station = 'Station A'",
+                    null, 10, true),
+            new ReportQuery("exercise3.totalRevenue", EXERCISE_3,
+                    "\n3. Total Revenue:",
+                    "SELECT ROUND(SUM(price), 2) as total_revenue " +
+                            "FROM bike_rentals_view",
+                    "SELECT ROUND(CAST(SUM(revenue) AS DOUBLE), 2) as total_revenue " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'gender'",
+                    20, false),
+
+            // ===== Exercise 4 =====
+            new ReportQuery("exercise4.rentalsByStation", EXERCISE_4,
+                    "1. Rentals count by start station:",
+                    "SELECT start_station, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC",
+                    "SELECT start_station, SUM(rental_count) as rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC",
+                    20, false),
+            new ReportQuery("exercise4.avgDurationByStation", EXERCISE_4,
+                    "\n2. Average rental duration by start station:",
+                    "SELECT start_station, " +
+                            "       ROUND(AVG(duration_minutes), 2) as avg_duration_minutes " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY start_station " +
+                            "ORDER BY avg_duration_minutes DESC",
+                    "SELECT start_station, " +
+                            "       ROUND(SUM(duration_sum) / SUM(duration_count), 2) as avg_duration_minutes " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' " +
+                            "GROUP BY start_station " +
+                            "ORDER BY avg_duration_minutes DESC",
+                    20, false),
+            new ReportQuery("exercise4.topStation", EXERCISE_4,
+                    "\n3. Station with highest number of rentals:",
+                    "SELECT start_station, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 1",
+                    "SELECT start_station, SUM(rental_count) as rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 1",
+                    20, false),
+
+            // ===== Exercise 5 =====
+            new ReportQuery("exercise5.extractedHours", EXERCISE_5,
+                    "1. Sample of extracted hours:",
+                    "SELECT rental_id, start_time, HOUR(start_time) as hour " +
+                            "FROM bike_rentals_view " +
+                            "LIMIT 10",
+                    null, 20, false),
+            new ReportQuery("exercise5.rentalsByHour", EXERCISE_5,
+                    "\n2. Bikes rented per hour (Peak Hours Analysis):",
+                    "SELECT HOUR(start_time) as hour, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY HOUR(start_time) " +
+                            "ORDER BY hour",
+                    "SELECT hour, SUM(rental_count) as rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' " +
+                            "GROUP BY hour " +
+                            "ORDER BY hour",
+                    24, false),
+            new ReportQuery("exercise5.peakHours", EXERCISE_5,
+                    "\nTop 3 Peak Hours:",
+                    "SELECT HOUR(start_time) as hour, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY HOUR(start_time) " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 3",
+                    "SELECT hour, SUM(rental_count) as rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' " +
+                            "GROUP BY hour " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 3",
+                    20, false),
+            new ReportQuery("exercise5.morningStation", EXERCISE_5,
+                    "\n3. Most popular start station during morning (7-12):",
+                    "SELECT start_station, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "WHERE HOUR(start_time) BETWEEN 7 AND 12 " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 1",
+                    "SELECT start_station, SUM(rental_count) as rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'station_hour' AND hour BETWEEN 7 AND 12 " +
+                            "GROUP BY start_station " +
+                            "ORDER BY rental_count DESC " +
+                            "LIMIT 1",
+                    20, false),
+
+            // ===== Exercise 6 =====
+            new ReportQuery("exercise6.averageAge", EXERCISE_6,
+                    "1. Average age of users:",
+                    "SELECT ROUND(AVG(age), 2) as average_age " +
+                            "FROM bike_rentals_view",
+                    "SELECT ROUND(SUM(age_sum) / SUM(age_count), 2) as average_age " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'gender'",
+                    20, false),
+            new ReportQuery("exercise6.rentalsByGender", EXERCISE_6,
+                    "\n2. Rentals count by gender:",
+                    "SELECT gender, COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY gender " +
+                            "ORDER BY rental_count DESC",
+                    "SELECT gender, rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'gender' " +
+                            "ORDER BY rental_count DESC",
+                    20, false),
+            new ReportQuery("exercise6.rentalsByAgeGroup", EXERCISE_6,
+                    "\n3. Rentals by age group:",
+                    "SELECT " +
+                            "  CASE " +
+                            "    WHEN age BETWEEN 18 AND 30 THEN '18-30' " +
+                            "    WHEN age BETWEEN 31 AND 40 THEN '31-40' " +
+                            "    WHEN age BETWEEN 41 AND 50 THEN '41-50' " +
+                            "    WHEN age >= 51 THEN '51+' " +
+                            "    ELSE 'Unknown' " +
+                            "  END as age_group, " +
+                            "  COUNT(*) as rental_count " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY " +
+                            "  CASE " +
+                            "    WHEN age BETWEEN 18 AND 30 THEN '18-30' " +
+                            "    WHEN age BETWEEN 31 AND 40 THEN '31-40' " +
+                            "    WHEN age BETWEEN 41 AND 50 THEN '41-50' " +
+                            "    WHEN age >= 51 THEN '51+' " +
+                            "    ELSE 'Unknown' " +
+                            "  END " +
+                            "ORDER BY rental_count DESC",
+                    "SELECT age_group, rental_count " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'age_group' " +
+                            "ORDER BY rental_count DESC",
+                    20, false),
+
+            // ===== Bonus =====
+            new ReportQuery("bonus.profitableRoutes", BONUS,
+                    "Most profitable route:",
+                    "SELECT start_station, end_station, " +
+                            "       COUNT(*) as trips, " +
+                            "       ROUND(SUM(price), 2) as total_revenue " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY start_station, end_station " +
+                            "ORDER BY total_revenue DESC " +
+                            "LIMIT 5",
+                    "SELECT start_station, end_station, " +
+                            "       rental_count as trips, " +
+                            "       ROUND(CAST(revenue AS DOUBLE), 2) as total_revenue " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'route' " +
+                            "ORDER BY total_revenue DESC " +
+                            "LIMIT 5",
+                    20, false),
+            new ReportQuery("bonus.priceByDuration", BONUS,
+                    "\nAverage price by duration category:",
+                    "SELECT " +
+                            "  CASE " +
+                            "    WHEN duration_minutes <= 15 THEN 'Short (0-15 min)' " +
+                            "    WHEN duration_minutes <= 30 THEN 'Medium (16-30 min)' " +
+                            "    WHEN duration_minutes <= 60 THEN 'Long (31-60 min)' " +
+                            "    ELSE 'Very Long (60+ min)' " +
+                            "  END as duration_category, " +
+                            "  COUNT(*) as rental_count, " +
+                            "  ROUND(AVG(price), 2) as avg_price " +
+                            "FROM bike_rentals_view " +
+                            "GROUP BY " +
+                            "  CASE " +
+                            "    WHEN duration_minutes <= 15 THEN 'Short (0-15 min)' " +
+                            "    WHEN duration_minutes <= 30 THEN 'Medium (16-30 min)' " +
+                            "    WHEN duration_minutes <= 60 THEN 'Long (31-60 min)' " +
+                            "    ELSE 'Very Long (60+ min)' " +
+                            "  END " +
+                            "ORDER BY avg_price",
+                    "SELECT duration_category, rental_count, " +
+                            "       ROUND(CAST(revenue AS DOUBLE) / price_count, 2) as avg_price " +
+                            "FROM rental_cube_view " +
+                            "WHERE grouping_set = 'duration_category' " +
+                            "ORDER BY avg_price",
+                    20, false));
+
+    private ReportQueries() {
+    }
+
+    public static List<ReportQuery> all() {
+        return QUERIES;
+    }
+
+    public static Optional<ReportQuery> byName(String name) {
+        return QUERIES.stream().filter(q -> q.name().equals(name)).findFirst();
+    }
+}
@@ -0,0 +1,21 @@
+package ma.enset.report;
+
+/**
+ * One named query of the exercise report.
+ *
+ * @param name     stable identifier, e.g. {@code exercise4.avgDurationByStation}
+ * @param section  exercise header the query is printed under
+ * @param heading  line printed right before the result table
+ * @param sql      query against {@code bike_rentals_view}
+ * @param cubeSql  equivalent query against {@code rental_cube_view}, or {@code null}
+ *                 when the query needs row-level data
+ * @param rows     number of rows passed to {@code show()}
+ * @param printTotal whether the row count is printed after the table
+ */
+public record ReportQuery(String name, String section, String heading, String sql, String cubeSql,
+                          int rows, boolean printTotal) {
+
+    public boolean isAggregate() {
+        return cubeSql != null;
+    }
+}
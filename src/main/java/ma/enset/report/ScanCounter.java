@@ -0,0 +1,52 @@
+package ma.enset.report;
+
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.execution.QueryExecution;
+import org.apache.spark.sql.util.QueryExecutionListener;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many times the input files were really scanned by the queries
+ * executed on a session, as opposed to reads served from a cache.
+ */
+public class ScanCounter implements QueryExecutionListener {
+    private final SparkSession spark;
+    private final AtomicLong fileScans = new AtomicLong();
+    private final Set<Object> materializedCaches = Collections.synchronizedSet(
+            Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    private ScanCounter(SparkSession spark) {
+        this.spark = spark;
+    }
+
+    /** Must be registered before the data is loaded so the initial scan is seen. */
+    public static ScanCounter register(SparkSession spark) {
+        ScanCounter counter = new ScanCounter(spark);
+        spark.listenerManager().register(counter);
+        return counter;
+    }
+
+    @Override
+    public void onSuccess(String funcName, QueryExecution qe, long durationNs) {
+        fileScans.addAndGet(PlanInspector.countFileScans(qe.executedPlan(), materializedCaches));
+    }
+
+    @Override
+    public void onFailure(String funcName, QueryExecution qe, Exception exception) {
+    }
+
+    public long fileScans() {
+        // Listener events are delivered asynchronously, drain them before reading
+        try {
+            spark.sparkContext().listenerBus().waitUntilEmpty();
+        } catch (TimeoutException e) {
+            System.err.println("Scan count may be incomplete: " + e.getMessage());
+        }
+        return fileScans.get();
+    }
+}
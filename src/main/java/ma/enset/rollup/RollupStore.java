@@ -0,0 +1,205 @@
+package ma.enset.rollup;
+
+import ma.enset.data.RentalLoader;
+import ma.enset.report.RentalCube;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.storage.StorageLevel;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * On-disk copy of the {@link RentalCube}, kept in step with the rental files
+ * it was computed from.
+ * <p>
+ * Each refresh compares the source files with the ones recorded in the
+ * manifest of the current version. Unchanged sources reuse the stored cube as
+ * is; files added to a source directory are aggregated on their own and merged
+ * into the cube (all measures are additive); any other change rebuilds it
+ * from the rentals the caller supplies, so a run that already parsed the
+ * source does not parse it again. The supplier is only called on a rebuild.
+ * The cube is then registered as {@link RentalCube#VIEW_NAME}, so aggregate
+ * report queries never touch the raw rentals.
+ */
+public class RollupStore {
+    private static final String MANIFEST = "manifest.properties";
+    private static final String DIMENSIONS =
+            "grouping_set, start_station, end_station, hour, gender, age_group, duration_category";
+
+    private final SparkSession spark;
+    private final Path dir;
+    private final Path source;
+    private final Supplier<Dataset<Row>> rentals;
+    private Dataset<Row> cached;
+
+    /** {@code rentals} yields the well-formed rows of every file of {@code source}. */
+    public RollupStore(SparkSession spark, Path dir, Path source, Supplier<Dataset<Row>> rentals) {
+        this.spark = spark;
+        this.dir = dir.toAbsolutePath();
+        this.source = source.toAbsolutePath();
+        this.rentals = rentals;
+    }
+
+    public enum Status { UP_TO_DATE, APPENDED, REBUILT }
+
+    public Status refresh() {
+        try {
+            Map<String, String> current = fingerprints();
+            Manifest manifest = Manifest.read(dir.resolve(MANIFEST));
+
+            Status status;
+            List<String> added = new ArrayList<>();
+            if (manifest != null && manifest.files.equals(current)) {
+                status = Status.UP_TO_DATE;
+            } else if (manifest != null && isAppend(manifest.files, current, added)) {
+                Dataset<Row> delta = cube(RentalLoader.readValid(spark, added.toArray(new String[0])));
+                Dataset<Row> stored = spark.read().parquet(versionDir(manifest.version).toString());
+                delta.unionByName(stored).createOrReplaceTempView("rollup_merge_view");
+                write(spark.sql(
+                        "SELECT " + DIMENSIONS + ", " +
+                                "       SUM(rental_count) as rental_count, " +
+                                "       SUM(revenue) as revenue, " +
+                                "       SUM(price_count) as price_count, " +
+                                "       SUM(duration_sum) as duration_sum, " +
+                                "       SUM(duration_count) as duration_count, " +
+                                "       SUM(age_sum) as age_sum, " +
+                                "       SUM(age_count) as age_count " +
+                                "FROM rollup_merge_view " +
+                                "GROUP BY " + DIMENSIONS), manifest.version + 1, current);
+                status = Status.APPENDED;
+            } else {
+                write(cube(rentals.get()), manifest == null ? 1 : manifest.version + 1, current);
+                status = Status.REBUILT;
+            }
+
+            Manifest latest = Manifest.read(dir.resolve(MANIFEST));
+            if (cached != null) {
+                cached.unpersist();
+            }
+            cached = spark.read().parquet(versionDir(latest.version).toString())
+                    .persist(StorageLevel.MEMORY_AND_DISK());
+            long rows = cached.count();
+            cached.createOrReplaceTempView(RentalCube.VIEW_NAME);
+
+            System.out.println("Rollup " + status.name().toLowerCase().replace('_', ' ')
+                    + " (version " + latest.version + ", " + rows + " cube rows"
+                    + (added.isEmpty() ? "" : ", " + added.size() + " new file(s)") + ")");
+            return status;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot refresh rollup in " + dir, e);
+        }
+    }
+
+    private Dataset<Row> cube(Dataset<Row> rentals) {
+        rentals.createOrReplaceTempView("rollup_source_view");
+        return spark.sql(RentalCube.sql("rollup_source_view"));
+    }
+
+    // New version directory first, then the manifest switch, then cleanup of older versions
+    private void write(Dataset<Row> cube, int version, Map<String, String> files) throws IOException {
+        cube.coalesce(1).write().mode(SaveMode.Overwrite).parquet(versionDir(version).toString());
+        new Manifest(version, files).write(dir.resolve(MANIFEST));
+        try (Stream<Path> entries = Files.list(dir)) {
+            for (Path old : entries.filter(p -> p.getFileName().toString().startsWith("v")
+                    && !p.equals(versionDir(version))).toList()) {
+                deleteRecursively(old);
+            }
+        }
+    }
+
+    private static boolean isAppend(Map<String, String> stored, Map<String, String> current, List<String> added) {
+        for (Map.Entry<String, String> file : stored.entrySet()) {
+            if (!file.getValue().equals(current.get(file.getKey()))) {
+                return false;
+            }
+        }
+        current.keySet().stream().filter(f -> !stored.containsKey(f)).forEach(added::add);
+        return !added.isEmpty();
+    }
+
+    /** Path to "size:lastModified" of every data file of the source, as Spark would list them. */
+    private Map<String, String> fingerprints() throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> entries = Files.list(source)) {
+                files = entries.filter(Files::isRegularFile)
+                        .filter(p -> !p.getFileName().toString().startsWith(".")
+                                && !p.getFileName().toString().startsWith("_"))
+                        .sorted()
+                        .toList();
+            }
+        } else {
+            files = List.of(source);
+        }
+        Map<String, String> fingerprints = new LinkedHashMap<>();
+        for (Path file : files) {
+            fingerprints.put(file.toString(), Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis());
+        }
+        return fingerprints;
+    }
+
+    private Path versionDir(int version) {
+        return dir.resolve("v" + version);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    private record Manifest(int version, Map<String, String> files) {
+
+        static Manifest read(Path file) throws IOException {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            Properties props = new Properties();
+            try (Reader in = Files.newBufferedReader(file)) {
+                props.load(in);
+            }
+            Map<String, String> files = new LinkedHashMap<>();
+            int count = Integer.parseInt(props.getProperty("files", "0"));
+            for (int i = 0; i < count; i++) {
+                files.put(props.getProperty("file." + i + ".path"), props.getProperty("file." + i + ".fingerprint"));
+            }
+            return new Manifest(Integer.parseInt(props.getProperty("version")), files);
+        }
+
+        void write(Path file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("version", String.valueOf(version));
+            props.setProperty("files", String.valueOf(files.size()));
+            int i = 0;
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                props.setProperty("file." + i + ".path", entry.getKey());
+                props.setProperty("file." + i + ".fingerprint", entry.getValue());
+                i++;
+            }
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(MANIFEST + ".tmp");
+            try (Writer out = Files.newBufferedWriter(tmp)) {
+                props.store(out, "Rental rollup manifest");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package ma.enset.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ma.enset.data.RentalLoader;
+import ma.enset.data.RentalSession;
+import ma.enset.report.ReportEngine;
+import ma.enset.report.ReportQueries;
+import ma.enset.report.ReportQuery;
+import org.apache.spark.sql.AnalysisException;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.catalyst.expressions.CallMethodViaReflection;
+import org.apache.spark.sql.catalyst.expressions.Expression;
+import org.apache.spark.sql.catalyst.expressions.SubqueryExpression;
+import org.apache.spark.sql.catalyst.parser.ParseException;
+import org.apache.spark.sql.catalyst.plans.logical.Command;
+import org.apache.spark.sql.catalyst.plans.logical.InsertIntoDir;
+import org.apache.spark.sql.catalyst.plans.logical.InsertIntoStatement;
+import org.apache.spark.sql.catalyst.plans.logical.LogicalPlan;
+import scala.jdk.javaapi.CollectionConverters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Long-running local HTTP server that keeps a warm {@link SparkSession}, the
+ * cached rentals view and the aggregate cube in memory.
+ * <p>
+ * Endpoints (bound to localhost):
+ * <ul>
+ *     <li>{@code GET /queries} - names of the exercise queries</li>
+ *     <li>{@code GET /query/<name>} - result of a named query</li>
+ *     <li>{@code POST /sql} - result of the ad-hoc query in the request body</li>
+ * </ul>
+ * Ad-hoc SQL is parsed before it runs. Commands (including inserts and
+ * {@code INSERT OVERWRITE DIRECTORY}, also behind a {@code WITH}) and calls to
+ * {@code reflect}/{@code java_method} are rejected.
+ * Rejected, unparseable or unresolvable SQL gets a 400; any other failure,
+ * such as a reload or execution error, gets a 500 and is logged.
+ * Results are JSON and cached by query text and data version. The version
+ * changes when the CSV file's size or modification time changes, which
+ * reloads the data and implicitly invalidates every cached result.
+ * <p>
+ * Usage: {@code QueryServer [--port 8090] [--data bike_sharing.csv]}.
+ */
+public class QueryServer {
+    private static final int MAX_ROWS = 1000;
+    private static final int MAX_CACHED_RESULTS = 256;
+
+    private final SparkSession spark;
+    private final File source;
+    private final Map<String, String> results = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_RESULTS;
+        }
+    };
+    private volatile String dataVersion;
+    private volatile ReportEngine engine;
+    private Dataset<Row> rentals;
+
+    QueryServer(SparkSession spark, File source) {
+        this.spark = spark;
+        this.source = source;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8090;
+        String data = "bike_sharing.csv";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--data" -> data = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SparkSession spark = RentalSession.builder("Bike Sharing Query Server").getOrCreate();
+        spark.sparkContext().setLogLevel("WARN");
+
+        QueryServer server = new QueryServer(spark, new File(data).getAbsoluteFile());
+        server.refresh();
+
+        HttpServer http = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        http.createContext("/queries", server::handleQueries);
+        http.createContext("/query/", server::handleNamedQuery);
+        http.createContext("/sql", server::handleSql);
+        http.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            http.stop(0);
+            spark.stop();
+        }));
+        http.start();
+        System.out.println("Query server listening on http://127.0.0.1:" + port + " (data version " + server.dataVersion + ")");
+    }
+
+    /** Reloads the rentals and rebuilds the cube when the source file changed since the last load. */
+    synchronized void refresh() {
+        String version = source.length() + "-" + source.lastModified();
+        if (version.equals(dataVersion)) {
+            return;
+        }
+        if (rentals != null) {
+            spark.catalog().clearCache();
+        }
+        rentals = RentalLoader.load(spark, source.getPath(),
+                new File(source.getParentFile(), "quarantine").getPath()).rentals();
+        rentals.createOrReplaceTempView("bike_rentals_view");
+        ReportEngine fresh = new ReportEngine(spark);
+        fresh.prepare();
+        engine = fresh;
+        dataVersion = version;
+        System.out.println("Loaded " + source + " (data version " + version + ")");
+    }
+
+    private void handleQueries(HttpExchange exchange) throws IOException {
+        String names = ReportQueries.all().stream()
+                .map(q -> json(q.name()))
+                .collect(Collectors.joining(", ", "[", "]"));
+        respond(exchange, 200, "{\"queries\": " + names + "}");
+    }
+
+    private void handleNamedQuery(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring("/query/".length());
+        Optional<ReportQuery> query = ReportQueries.byName(name);
+        if (query.isEmpty()) {
+            respond(exchange, 404, "{\"error\": " + json("Unknown query: " + name) + "}");
+            return;
+        }
+        answer(exchange, "query:" + name, () -> engine.result(query.get()));
+    }
+
+    private void handleSql(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "{\"error\": \"POST a SELECT statement\"}");
+            return;
+        }
+        String sql = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8).trim();
+        answer(exchange, "sql:" + sql, () -> readOnlyQuery(sql));
+    }
+
+    /**
+     * Returns {@code sql} as a Dataset if it is a plain query. The check runs
+     * on the parsed plan, because {@code spark.sql} executes commands eagerly.
+     */
+    private Dataset<Row> readOnlyQuery(String sql) {
+        LogicalPlan parsed;
+        try {
+            parsed = spark.sessionState().sqlParser().parsePlan(sql);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        if (writes(parsed)) {
+            throw new IllegalArgumentException("Only queries are accepted, not commands or inserts");
+        }
+        Dataset<Row> result;
+        try {
+            result = spark.sql(sql);
+        } catch (Exception e) {
+            // Unknown table, column or function: AnalysisException is checked in Java but not declared
+            if (e instanceof AnalysisException) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+            throw e;
+        }
+        if (callsReflection(result.queryExecution().analyzed())) {
+            throw new IllegalArgumentException("reflect and java_method are not allowed");
+        }
+        return result;
+    }
+
+    private static boolean writes(LogicalPlan plan) {
+        if (plan instanceof Command || plan instanceof InsertIntoStatement || plan instanceof InsertIntoDir) {
+            return true;
+        }
+        for (LogicalPlan child : CollectionConverters.asJava(plan.children())) {
+            if (writes(child)) {
+                return true;
+            }
+        }
+        // CTE definitions of an unresolved WITH are inner children, not children
+        for (Object inner : CollectionConverters.asJava(plan.innerChildren())) {
+            if (inner instanceof LogicalPlan innerPlan && writes(innerPlan)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean callsReflection(LogicalPlan plan) {
+        for (Expression expression : CollectionConverters.asJava(plan.expressions())) {
+            if (callsReflection(expression)) {
+                return true;
+            }
+        }
+        for (LogicalPlan child : CollectionConverters.asJava(plan.children())) {
+            if (callsReflection(child)) {
+                return true;
+            }
+        }
+        for (Object inner : CollectionConverters.asJava(plan.innerChildren())) {
+            if (inner instanceof LogicalPlan innerPlan && callsReflection(innerPlan)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean callsReflection(Expression expression) {
+        if (expression instanceof CallMethodViaReflection) {
+            return true;
+        }
+        if (expression instanceof SubqueryExpression subquery && callsReflection(subquery.plan())) {
+            return true;
+        }
+        for (Expression child : CollectionConverters.asJava(expression.children())) {
+            if (callsReflection(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void answer(HttpExchange exchange, String queryKey, Supplier<Dataset<Row>> query)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            refresh();
+            String key = dataVersion + "\n" + queryKey;
+            String rows;
+            boolean cached;
+            synchronized (results) {
+                rows = results.get(key);
+            }
+            cached = rows != null;
+            if (!cached) {
+                Dataset<Row> result;
+                try {
+                    result = query.get();
+                } catch (IllegalArgumentException e) {
+                    // Rejected, unparseable or unresolvable SQL: the request is at fault
+                    respond(exchange, 400, "{\"error\": " + json(String.valueOf(e.getMessage())) + "}");
+                    return;
+                }
+                List<String> json = result.limit(MAX_ROWS).toJSON().collectAsList();
+                rows = String.join(", ", json);
+                synchronized (results) {
+                    results.put(key, rows);
+                }
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            respond(exchange, 200, "{\"dataVersion\": " + json(dataVersion)
+                    + ", \"cached\": " + cached
+                    + ", \"elapsedMs\": " + elapsedMs
+                    + ", \"rows\": [" + rows + "]}");
+        } catch (Exception e) {
+            // Reload, planning or execution failure: a server-side error, not the request's
+            System.err.println("Query failed (" + queryKey + "): " + e.getMessage());
+            e.printStackTrace();
+            respond(exchange, 500, "{\"error\": " + json(String.valueOf(e.getMessage())) + "}");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String json(String value) {
+        StringBuilder out = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"').toString();
+    }
+}
@@ -0,0 +1,82 @@
+package ma.enset.streaming;
+
+import org.apache.spark.api.java.function.VoidFunction2;
+import org.apache.spark.sql.Column;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SaveMode;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * Micro-batch sink of {@link StreamingRentalAnalysis}: keeps the daily totals
+ * per start station and hour in a Parquet table partitioned by day, and
+ * prints the report of every day a batch touched.
+ * <p>
+ * Each batch holds the new running totals of the keys it changed. Those rows
+ * replace their stored version, so a batch replayed after a restart writes the
+ * same table. The per-station, per-hour and revenue views are summed from the
+ * stored rows of the touched days only.
+ */
+final class DailyTotalsSink implements VoidFunction2<Dataset<Row>, Long> {
+    private final String path;
+
+    DailyTotalsSink(String path) {
+        this.path = path;
+    }
+
+    @Override
+    public void call(Dataset<Row> changed, Long batchId) {
+        // Batches without new rows still run to move the watermark forward
+        if (changed.isEmpty()) {
+            return;
+        }
+        Object[] days = changed.select("day").distinct().collectAsList().stream()
+                .map(row -> row.get(0))
+                .toArray();
+
+        Dataset<Row> totals = changed;
+        if (Files.isDirectory(Path.of(path))) {
+            Dataset<Row> stored = changed.sparkSession().read().parquet(path)
+                    .filter(col("day").isin(days));
+            Column sameKey = stored.col("day").equalTo(changed.col("day"))
+                    .and(stored.col("start_station").equalTo(changed.col("start_station")))
+                    .and(stored.col("hour").equalTo(changed.col("hour")));
+            totals = stored.join(changed, sameKey, "left_anti").unionByName(changed);
+        }
+        // Materialized first: the partitions it was read from are about to be replaced
+        totals = totals.localCheckpoint();
+        totals.write()
+                .mode(SaveMode.Overwrite)
+                .option("partitionOverwriteMode", "dynamic")
+                .partitionBy("day")
+                .parquet(path);
+
+        print(totals, batchId, days.length);
+    }
+
+    private static void print(Dataset<Row> totals, long batchId, int dayCount) {
+        System.out.println("\n--- Batch " + batchId + ": " + dayCount + " day(s) updated ---\n");
+
+        System.out.println("1. Rentals per start station:");
+        totals.groupBy(col("day"), col("start_station"))
+                .agg(sum("rental_count").as("rental_count"))
+                .orderBy(col("day"), col("rental_count").desc())
+                .show(100, false);
+
+        System.out.println("2. Rentals per hour:");
+        totals.groupBy(col("day"), col("hour"))
+                .agg(sum("rental_count").as("rental_count"))
+                .orderBy(col("day"), col("hour"))
+                .show(100, false);
+
+        System.out.println("3. Revenue:");
+        totals.groupBy(col("day"))
+                .agg(sum("rental_count").as("rentals"), round(sum("revenue"), 2).as("total_revenue"))
+                .orderBy(col("day"))
+                .show(100, false);
+    }
+}
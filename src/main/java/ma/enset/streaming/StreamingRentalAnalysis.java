@@ -0,0 +1,101 @@
+package ma.enset.streaming;
+
+import ma.enset.data.RentalSchema;
+import ma.enset.data.RentalSession;
+import org.apache.spark.sql.Dataset;
+import org.apache.spark.sql.Row;
+import org.apache.spark.sql.SparkSession;
+import org.apache.spark.sql.streaming.OutputMode;
+import org.apache.spark.sql.streaming.Trigger;
+
+import java.io.File;
+
+import static org.apache.spark.sql.functions.*;
+
+/**
+ * Streaming counterpart of the batch report: watches a landing directory for
+ * new rental CSV files and keeps the per-station counts, peak-hour counts and
+ * revenue totals up to date.
+ * <p>
+ * The landing files are parsed by a single streaming query, which keeps one
+ * aggregate at the finest grain of the report (day, start station, hour).
+ * {@link DailyTotalsSink} stores its changed rows and rolls the three views up
+ * from them in every micro-batch.
+ * <p>
+ * Aggregates are keyed by a one-day event-time window on {@code start_time}.
+ * The watermark lets Spark finalize and drop a day's state once no more late
+ * rentals can arrive for it, and the file source only reads files it has not
+ * seen before, so each micro-batch costs time in proportion to the new data.
+ * State lives in a local RocksDB store under the checkpoint directory.
+ * Rentals older than the watermark when they arrive are not counted.
+ * <p>
+ * Usage: {@code StreamingRentalAnalysis [--landing DIR] [--checkpoint DIR]
+ * [--watermark "2 hours"] [--trigger "30 seconds"]}.
+ */
+public class StreamingRentalAnalysis {
+    public static void main(String[] args) throws Exception {
+        String landing = "landing";
+        String checkpoint = "checkpoint";
+        String watermark = "2 hours";
+        String trigger = "30 seconds";
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--landing" -> landing = args[++i];
+                case "--checkpoint" -> checkpoint = args[++i];
+                case "--watermark" -> watermark = args[++i];
+                case "--trigger" -> trigger = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SparkSession spark = RentalSession.builder("Bike Sharing Streaming Analysis")
+                .config("spark.sql.streaming.stateStore.providerClass",
+                        "org.apache.spark.sql.execution.streaming.state.RocksDBStateStoreProvider")
+                .getOrCreate();
+
+        spark.sparkContext().setLogLevel("WARN");
+
+        new File(landing).mkdirs();
+        String landingPath = new File(landing).getAbsolutePath();
+        String checkpointPath = new File(checkpoint).getAbsolutePath();
+
+        System.out.println("\n========================================");
+        System.out.println("BIKE SHARING STREAMING ANALYSIS");
+        System.out.println("========================================\n");
+        System.out.println("Watching: " + landingPath);
+        System.out.println("Checkpoints: " + checkpointPath + "\n");
+
+        try {
+            // Rows older than the watermark (latest start_time seen minus the delay) are dropped as
+            // late, so landing files must move forward in event time (DataGenerator --start/--days).
+            // Files must also appear atomically: write them elsewhere and move them in.
+            Dataset<Row> rentals = spark.readStream()
+                    .schema(RentalSchema.SCHEMA)
+                    .option("header", "true")
+                    .option("timestampFormat", RentalSchema.TIMESTAMP_PATTERN)
+                    .csv(landingPath)
+                    .withWatermark("start_time", watermark);
+
+            // Count and revenue per day, station and hour: every report view sums these rows
+            Dataset<Row> totals = rentals
+                    .groupBy(window(col("start_time"), "1 day").as("window"),
+                            col("start_station"), hour(col("start_time")).as("hour"))
+                    .agg(count("*").as("rental_count"),
+                            sum(col("price").cast("decimal(20, 2)")).as("revenue"))
+                    .select(col("window.start").cast("date").as("day"),
+                            col("start_station"), col("hour"), col("rental_count"), col("revenue"));
+
+            totals.writeStream()
+                    .queryName("daily_totals")
+                    .outputMode(OutputMode.Update())
+                    .trigger(Trigger.ProcessingTime(trigger))
+                    .option("checkpointLocation", checkpointPath + File.separator + "daily_totals")
+                    .foreachBatch(new DailyTotalsSink(checkpointPath + File.separator + "totals"))
+                    .start()
+                    .awaitTermination();
+        } finally {
+            spark.stop();
+        }
+    }
+}